@@ -0,0 +1,51 @@
+package ch.fhnw.tvver.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.fhnw.tvver.pitchdetection.Decimator;
+
+/**
+ * Decimating one frame of 1024 samples for the pitch detection. The highest
+ * frequency selects the factor: C8 gives 4, C7 8 and C6 16 at 44.1 kHz.
+ * Together with {@link YinBenchmark} at the reduced buffer size this is the
+ * cost of a decimated detection.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DecimatorBenchmark {
+	private static final int FRAME_SIZE = 1024;
+
+	@Param({"4186.01", "2093.0", "1046.5"})
+	public float maxFrequency;
+
+	private Decimator decimator;
+	private float[]   frame;
+
+	@Setup
+	public void setup() {
+		decimator = new Decimator(maxFrequency);
+		decimator.setSampleRate(Signals.SAMPLE_RATE);
+		frame     = Signals.CHORD.generate(FRAME_SIZE);
+	}
+
+	@Benchmark
+	public int frame() {
+		return decimator.process(frame);
+	}
+}
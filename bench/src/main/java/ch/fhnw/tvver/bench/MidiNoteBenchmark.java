@@ -0,0 +1,49 @@
+package ch.fhnw.tvver.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.fhnw.tvver.pitchdetection.MidiNote;
+import ch.fhnw.tvver.pitchdetection.MidiNoteUtils;
+
+/**
+ * Frequency to MIDI mapping for frequencies spread over the whole MIDI range.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MidiNoteBenchmark {
+	private static final int COUNT = 1024;
+
+	private final float[] frequencies = new float[COUNT];
+	private       int     idx;
+
+	@Setup
+	public void setup() {
+		for(int i = 0; i < COUNT; i++)
+			frequencies[i] = Signals.frequency(0) * (float)Math.pow(2, 127.0 * i / COUNT / 12.0);
+	}
+
+	@Benchmark
+	public MidiNote nearestNote() {
+		return MidiNoteUtils.getNearestMidiNote(frequencies[idx++ & (COUNT - 1)]);
+	}
+
+	@Benchmark
+	public int packedPitch() {
+		return MidiNoteUtils.getPackedPitch(frequencies[idx++ & (COUNT - 1)]);
+	}
+}
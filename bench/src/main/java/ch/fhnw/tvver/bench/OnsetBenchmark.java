@@ -0,0 +1,114 @@
+package ch.fhnw.tvver.bench;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.fhnw.ether.audio.AudioUtilities.Window;
+import ch.fhnw.ether.audio.IAudioRenderTarget;
+import ch.fhnw.ether.audio.NullAudioTarget;
+import ch.fhnw.ether.audio.fx.FFT;
+import ch.fhnw.ether.media.IScheduler;
+import ch.fhnw.ether.media.RenderProgram;
+import ch.fhnw.tvver.DetectorParameters;
+import ch.fhnw.tvver.audio.FloatBufferAudioSource;
+import ch.fhnw.tvver.onsetdetection.OnSetDetection;
+import ch.fhnw.tvver.onsetdetection.OnSetDetection.ThresholdMode;
+import ch.fhnw.tvver.pitchdetection.PitchDetection;
+import ch.fhnw.tvver.pitchdetection.PitchDetectionResult;
+
+/**
+ * The onset detection on real frames: one second of a signal rendered
+ * through an FFT and {@link OnSetDetection} (band energy, flux and
+ * threshold) as fast as possible, reported per frame. {@link #fft()} renders
+ * the same program without the onset detection, the difference is the cost
+ * of the detection itself.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OnsetBenchmark {
+	private static final int FRAME_SIZE = 1024;
+	private static final int FRAMES     = (int)Signals.SAMPLE_RATE / FRAME_SIZE;
+
+	@Param({"TONE_MID", "CHORD", "NOISE", "SILENCE"})
+	public Signals signal;
+
+	@Param({"MEAN", "MEDIAN"})
+	public ThresholdMode thresholdMode;
+
+	private FloatBuffer samples;
+	private int         onsets;
+
+	@Setup
+	public void setup() {
+		samples = FloatBuffer.wrap(signal.generate(FRAMES * FRAME_SIZE));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FRAMES)
+	public int onset() throws Exception {
+		DetectorParameters params  = DetectorParameters.DEFAULT;
+		FFT                fft     = new FFT(params.getMinFrequency(), Window.HANN);
+		OnSetDetection     osd     = new OnSetDetection(fft, new CountingPitchDetection(), params.getBands(), params.getFluxThreshold(),
+				params.getMinFlux(), params.getEnergyRise(), thresholdMode, params.getThresholdFrames());
+		render(new RenderProgram<IAudioRenderTarget>(source(), fft, osd));
+		return onsets;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FRAMES)
+	public int fft() throws Exception {
+		render(new RenderProgram<IAudioRenderTarget>(source(), new FFT(DetectorParameters.DEFAULT.getMinFrequency(), Window.HANN)));
+		return onsets;
+	}
+
+	private FloatBufferAudioSource source() {
+		return new FloatBufferAudioSource(samples, Signals.SAMPLE_RATE, 1, FRAME_SIZE);
+	}
+
+	private static void render(RenderProgram<IAudioRenderTarget> program) throws Exception {
+		NullAudioTarget out = new NullAudioTarget(1, Signals.SAMPLE_RATE);
+		out.useProgram(program);
+		out.start();
+		out.sleepUntil(IScheduler.NOT_RENDERING);
+		out.stop();
+	}
+
+	// stands in for the pitch detection, which has its own benchmarks
+	private final class CountingPitchDetection implements PitchDetection {
+		@Override
+		public void detectPitch() {
+			onsets++;
+		}
+
+		@Override
+		public PitchDetectionResult getResult() {
+			return null;
+		}
+
+		@Override
+		public int getPackedResult() {
+			return PitchDetectionResult.NONE;
+		}
+
+		@Override
+		public void clearResult() {
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package ch.fhnw.tvver.bench;
+
+import java.util.Random;
+
+/**
+ * Synthetic test signals, generated deterministically.
+ */
+public enum Signals {
+	/** Pure tone at MIDI key 33 (55 Hz). */
+	TONE_LOW,
+	/** Pure tone at MIDI key 69 (440 Hz). */
+	TONE_MID,
+	/** Pure tone at MIDI key 105 (3520 Hz). */
+	TONE_HIGH,
+	/** C major triad around 262 Hz with decaying overtones. */
+	CHORD,
+	/** Uniform white noise. */
+	NOISE,
+	/** All zero. */
+	SILENCE;
+
+	public static final float SAMPLE_RATE = 44100;
+
+	public float[] generate(int length) {
+		float[] result = new float[length];
+		switch(this) {
+		case TONE_LOW:  tone(result, 33, 0.8f); break;
+		case TONE_MID:  tone(result, 69, 0.8f); break;
+		case TONE_HIGH: tone(result, 105, 0.8f); break;
+		case CHORD:
+			for(int key : new int[] {60, 64, 67})
+				for(int harmonic = 1; harmonic <= 4; harmonic++)
+					partial(result, frequency(key) * harmonic, 0.25f / harmonic);
+			break;
+		case NOISE:
+			Random random = new Random(42);
+			for(int i = 0; i < length; i++)
+				result[i] = random.nextFloat() * 2 - 1;
+			break;
+		case SILENCE:
+			break;
+		}
+		return result;
+	}
+
+	public static float frequency(int key) {
+		return (float)(440 * Math.pow(2, (key - 69) / 12.0));
+	}
+
+	private static void tone(float[] result, int key, float amplitude) {
+		partial(result, frequency(key), amplitude);
+	}
+
+	private static void partial(float[] result, double frequency, float amplitude) {
+		for(int i = 0; i < result.length; i++)
+			result[i] += amplitude * Math.sin(2 * Math.PI * frequency * i / SAMPLE_RATE);
+	}
+}
@@ -0,0 +1,53 @@
+package ch.fhnw.tvver.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.fhnw.tvver.pitchdetection.YinPitchDetection;
+import ch.fhnw.tvver.pitchdetection.YinPitchDetection.DifferenceFunction;
+
+/**
+ * One complete Yin detection (difference function, normalization,
+ * threshold, interpolation and MIDI mapping) per invocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class YinBenchmark {
+	@Param({"1400", "2048", "4096"})
+	public int bufferSize;
+
+	@Param({"DIRECT", "FFT", "INCREMENTAL"})
+	public DifferenceFunction differenceFunction;
+
+	@Param({"TONE_LOW", "TONE_MID", "TONE_HIGH", "CHORD", "NOISE", "SILENCE"})
+	public Signals signal;
+
+	private YinPitchDetection yin;
+	private float[]           samples;
+
+	@Setup
+	public void setup() {
+		yin     = new YinPitchDetection(bufferSize, differenceFunction);
+		samples = signal.generate(bufferSize);
+	}
+
+	@Benchmark
+	public int detect() {
+		return yin.detect(samples, Signals.SAMPLE_RATE);
+	}
+}
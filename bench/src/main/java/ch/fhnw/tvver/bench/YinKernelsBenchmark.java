@@ -0,0 +1,59 @@
+package ch.fhnw.tvver.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.fhnw.tvver.pitchdetection.YinKernels;
+
+/**
+ * The Yin difference function of the scalar and the unrolled kernels. The
+ * vector kernels need the module, run them with
+ * <code>-p kernels=vector -jvmArgsAppend --add-modules=jdk.incubator.vector</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class YinKernelsBenchmark {
+	@Param({"1400", "2048", "4096"})
+	public int bufferSize;
+
+	@Param({"scalar", "unrolled"})
+	public String kernels;
+
+	private YinKernels impl;
+	private float[]    samples;
+	private float[]    result;
+
+	@Setup
+	public void setup() {
+		switch(kernels) {
+		case "scalar": impl = YinKernels.SCALAR; break;
+		case "vector": impl = YinKernels.vector(); break;
+		default:       impl = YinKernels.UNROLLED; break;
+		}
+		if(impl == null)
+			throw new IllegalStateException("vector kernels not available, add the module jdk.incubator.vector");
+		samples = Signals.CHORD.generate(bufferSize);
+		result  = new float[bufferSize / 2];
+	}
+
+	@Benchmark
+	public float[] difference() {
+		impl.difference(samples, result);
+		return result;
+	}
+}
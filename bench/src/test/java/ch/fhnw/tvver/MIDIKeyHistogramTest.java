@@ -0,0 +1,62 @@
+package ch.fhnw.tvver;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MIDIKeyHistogramTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void countsNoteOnsOfValidFilesOnly() throws Exception {
+		int[] expected = new int[128];
+		for(int i = 0; i < 4; i++) {
+			int[] keys = {60 + i, 64, 67, 64};
+			write(tmp.newFile("good" + i + ".mid"), keys);
+			for(int key : keys)
+				expected[key]++;
+		}
+		// the notes before the broken event must not be counted either
+		byte[] broken = Files.readAllBytes(write(tmp.newFile("broken.mid"), new int[] {30, 31, 32}).toPath());
+		// the last note on loses its velocity and the end of track: the event runs past the shortened chunk
+		byte[] truncated = Arrays.copyOf(broken, broken.length - 10);
+		ByteBuffer.wrap(truncated).putInt(18, truncated.length - 22);
+		Files.write(tmp.newFile("truncated.mid").toPath(), truncated);
+		broken[broken.length - 3] = (byte)0xF4; // undefined status instead of the end of track meta event
+		Files.write(tmp.getRoot().toPath().resolve("broken.mid"), broken);
+
+		for(int parallelism : new int[] {1, 3})
+			assertArrayEquals(expected, MIDIKeyHistogram.scan(tmp.getRoot(), parallelism));
+	}
+
+	private static File write(File file, int[] keys) throws Exception {
+		Sequence sequence = new Sequence(Sequence.PPQ, 480);
+		Track    track    = sequence.createTrack();
+		long     tick     = 0;
+		for(int key : keys) {
+			track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, key, 100), tick));
+			track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, 0, key, 0), tick += 240));
+		}
+		try {
+			MidiSystem.write(sequence, 0, file);
+		} catch(IOException e) {
+			throw new AssertionError(e);
+		}
+		return file;
+	}
+}
@@ -0,0 +1,170 @@
+package ch.fhnw.tvver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.ShortMessage;
+
+import org.junit.Test;
+
+import ch.fhnw.ether.audio.AudioFrame;
+import ch.fhnw.ether.audio.IAudioRenderTarget;
+import ch.fhnw.tvver.profiling.LatencyHistogram;
+
+public class MidiKeyTrackerTest {
+	// by time, like the shell's set
+	private static final Comparator<MidiEvent> BY_TICK = Comparator.comparingLong(MidiEvent::getTick).thenComparing(MidiKeyTrackerTest::compareMessages);
+	// by key first, so the tracker sees the events out of time order
+	private static final Comparator<MidiEvent> BY_KEY  = Comparator.comparingInt((MidiEvent e) -> e.getMessage().getMessage().length > 1 ? e.getMessage().getMessage()[1] : -1)
+			.thenComparing(BY_TICK);
+
+	@Test
+	public void matchesMapModel() throws Exception {
+		Random random = new Random(17);
+		for(Comparator<MidiEvent> order : Arrays.asList(BY_TICK, BY_KEY)) {
+			for(int run = 0; run < 20; run++) {
+				SortedSet<MidiEvent> ref = new TreeSet<>(order);
+				List<MidiEvent>      all = events(random, 2000);
+				// the set sorts, but the insertion order must not matter either
+				Collections.shuffle(all, random);
+				ref.addAll(all);
+
+				MidiKeyTracker tracker = new MidiKeyTracker();
+				tracker.setRefMidi(ref);
+				MapModel     model  = new MapModel(ref);
+				AudioFrame[] frame  = {null};
+				IAudioRenderTarget target = target(frame);
+				tracker.init(target);
+				int checked = 0;
+				for(double time = 0; time < 12; time += random.nextDouble() * 0.05) {
+					frame[0] = new AudioFrame(0, 1, 44100, new float[1]);
+					frame[0].playOutTime = time;
+					tracker.run(target);
+					model.run(time);
+					assertArrayEquals("at " + time + " s", model.velocities, tracker.getVelocities());
+					for(int key = 0; key < 128; key++)
+						assertEquals("key " + key + " at " + time + " s", model.onsets[key], tracker.getOnsetTime(key));
+					checked++;
+				}
+				assertTrue(checked > 100);
+			}
+		}
+	}
+
+	@Test
+	public void latencyIsInNanoseconds() {
+		assertEquals(0, PCM2MIDIShell.latencyNs(1_500_000, 1500));
+		assertEquals(23_400_000, PCM2MIDIShell.latencyNs(1_523_400, 1500));
+		// a detection stamped with the start of the frame before the onset millisecond
+		assertEquals(-400_000, PCM2MIDIShell.latencyNs(1_499_600, 1500));
+
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(PCM2MIDIShell.latencyNs(10_250_000, 10_200));
+		assertEquals(50_000_000, histogram.getMax());
+	}
+
+	// repeated keys from a small range, overlapping notes, note on with velocity 0 as note off, some meta events
+	private static List<MidiEvent> events(Random random, int count) throws Exception {
+		List<MidiEvent> result = new ArrayList<>();
+		for(int i = 0; i < count; i++) {
+			long tick = random.nextInt(10_000_000); // microseconds, 10 s
+			if(random.nextInt(20) == 0) {
+				result.add(new MidiEvent(new MetaMessage(0x01, new byte[] {'x'}, 1), tick));
+				continue;
+			}
+			int key = 60 + random.nextInt(8);
+			switch(random.nextInt(4)) {
+			case 0:
+				result.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, 0, key, 0), tick));
+				break;
+			case 1:
+				result.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, key, 0), tick));
+				break;
+			default:
+				result.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, key, 1 + random.nextInt(127)), tick));
+			}
+			if(random.nextInt(10) == 0)
+				result.add(new MidiEvent(new ShortMessage(ShortMessage.CONTROL_CHANGE, 0, 64, 127), tick));
+		}
+		return result;
+	}
+
+	private static int compareMessages(MidiEvent a, MidiEvent b) {
+		byte[] x = a.getMessage().getMessage();
+		byte[] y = b.getMessage().getMessage();
+		for(int i = 0; i < Math.min(x.length, y.length); i++)
+			if(x[i] != y[i]) return Byte.compare(x[i], y[i]);
+		return Integer.compare(x.length, y.length);
+	}
+
+	private static IAudioRenderTarget target(AudioFrame[] frame) {
+		return (IAudioRenderTarget)Proxy.newProxyInstance(IAudioRenderTarget.class.getClassLoader(),
+				new Class<?>[] {IAudioRenderTarget.class}, (proxy, method, args) -> {
+					switch(method.getName()) {
+					case "getFrame":      return frame[0];
+					case "getSampleRate": return 44100f;
+					default:              return null;
+					}
+				});
+	}
+
+	/**
+	 * The lookup before the sorted arrays: the events bucketed per
+	 * millisecond in set order and walked millisecond by millisecond.
+	 */
+	private static final class MapModel {
+		final int[]                 velocities = new int[128];
+		final long[]                onsets     = new long[128];
+		final List<List<MidiEvent>> midiRef    = new ArrayList<>();
+		int                         msTime;
+
+		MapModel(SortedSet<MidiEvent> refMidi) {
+			for(MidiEvent e : refMidi) {
+				int msTime = (int)(e.getTick() / 1000L);
+				while(midiRef.size() <= msTime)
+					midiRef.add(null);
+				List<MidiEvent> evts = midiRef.get(msTime);
+				if(evts == null) {
+					evts = new ArrayList<MidiEvent>();
+					midiRef.set(msTime, evts);
+				}
+				evts.add(e);
+			}
+		}
+
+		void run(double playOutTime) {
+			int msTimeLimit = (int)(playOutTime * 1000);
+			for(; msTime <= msTimeLimit; msTime++) {
+				if(msTime < midiRef.size() && midiRef.get(msTime) != null) {
+					for(MidiEvent e : midiRef.get(msTime)) {
+						if(!(e.getMessage() instanceof ShortMessage)) continue;
+						ShortMessage sm = (ShortMessage)e.getMessage();
+						switch(sm.getCommand()) {
+						case ShortMessage.NOTE_ON:
+							velocities[sm.getData1()] = sm.getData2();
+							if(sm.getData2() != 0)
+								onsets[sm.getData1()] = msTime;
+							break;
+						case ShortMessage.NOTE_OFF:
+							velocities[sm.getData1()] = 0;
+							break;
+						}
+					}
+				}
+			}
+		}
+	}
+}
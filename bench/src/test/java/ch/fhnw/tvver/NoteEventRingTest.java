@@ -0,0 +1,64 @@
+package ch.fhnw.tvver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class NoteEventRingTest {
+	private static final int  EVENTS   = 100000;
+	private static final long STALL_MS = 500;
+
+	@Test
+	public void deliversInOrder() throws InterruptedException {
+		NoteEventRing ring     = new NoteEventRing(16);
+		Thread        producer = new Thread(() -> {
+			for(int i = 0; i < EVENTS; i++)
+				ring.publish(i, i & 0x7F, (i >> 7) & 0x7F, i % 4);
+		});
+		producer.start();
+		int[] next = new int[1];
+		while(next[0] < EVENTS) {
+			int count = ring.drain((time, key, velocity, kind) -> {
+				int i = next[0]++;
+				assertEquals(i, time);
+				assertEquals(i & 0x7F, key);
+				assertEquals((i >> 7) & 0x7F, velocity);
+				assertEquals(i % 4, kind);
+			}, 7);
+			if(count == 0)
+				Thread.yield();
+		}
+		producer.join();
+		assertEquals(EVENTS, ring.getConsumed());
+	}
+
+	@Test
+	public void stalledConsumerDoesNotBurnProducerCPU() throws InterruptedException {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		assumeTrue(threads.isThreadCpuTimeSupported());
+		threads.setThreadCpuTimeEnabled(true);
+
+		NoteEventRing ring     = new NoteEventRing(16);
+		AtomicLong    cpu      = new AtomicLong();
+		Thread        producer = new Thread(() -> {
+			long start = threads.getCurrentThreadCpuTime();
+			// fills the ring and then waits for the consumer
+			for(int i = 0; i < 17; i++)
+				ring.publish(i, 0, 0, 0);
+			cpu.set(threads.getCurrentThreadCpuTime() - start);
+		});
+		producer.start();
+		Thread.sleep(STALL_MS);
+		assertTrue(producer.isAlive());
+		ring.drain((time, key, velocity, kind) -> {}, 1);
+		producer.join();
+		// a spinning producer would use about STALL_MS of CPU
+		assertTrue("producer used " + cpu.get() / 1000000 + " ms CPU", cpu.get() < STALL_MS * 1000000 / 5);
+	}
+}
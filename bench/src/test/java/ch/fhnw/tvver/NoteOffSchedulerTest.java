@@ -0,0 +1,78 @@
+package ch.fhnw.tvver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+public class NoteOffSchedulerTest {
+	@Test
+	public void matchesModel() {
+		Random random = new Random(11);
+		for(int run = 0; run < 200; run++) {
+			NoteOffScheduler              scheduler = new NoteOffScheduler();
+			// due time to keys, and key to due time
+			TreeMap<Long, TreeSet<Integer>> model   = new TreeMap<>();
+			Map<Integer, Long>              pending = new HashMap<>();
+			long                            now     = 0;
+			for(int step = 0; step < 2000; step++) {
+				int key = random.nextInt(128);
+				switch(random.nextInt(4)) {
+				case 0:
+				case 1:
+					long time = now + random.nextInt(1000) - 100;
+					unschedule(model, pending, key);
+					pending.put(key, time);
+					model.computeIfAbsent(time, t -> new TreeSet<>()).add(key);
+					scheduler.schedule(key, time);
+					break;
+				case 2:
+					unschedule(model, pending, key);
+					scheduler.cancel(key);
+					break;
+				default:
+					now += random.nextInt(300);
+					List<Integer> released = new ArrayList<>();
+					scheduler.advance(now, released::add);
+
+					TreeSet<Integer> expected = new TreeSet<>();
+					long             last     = Long.MIN_VALUE;
+					for(int k : released) {
+						long due = pending.get(k);
+						assertTrue("released out of order", due >= last);
+						last = due;
+					}
+					while(!model.isEmpty() && model.firstKey() <= now) {
+						for(int k : model.pollFirstEntry().getValue()) {
+							expected.add(k);
+							pending.remove(k);
+						}
+					}
+					assertEquals(expected, new TreeSet<>(released));
+					assertEquals(expected.size(), released.size());
+					break;
+				}
+				assertEquals(pending.size(), scheduler.size());
+				for(int k = 0; k < 128; k++)
+					assertEquals(pending.containsKey(k), scheduler.isScheduled(k));
+			}
+		}
+	}
+
+	private static void unschedule(TreeMap<Long, TreeSet<Integer>> model, Map<Integer, Long> pending, int key) {
+		Long time = pending.remove(key);
+		if(time == null) return;
+		TreeSet<Integer> keys = model.get(time);
+		keys.remove(key);
+		if(keys.isEmpty())
+			model.remove(time);
+	}
+}
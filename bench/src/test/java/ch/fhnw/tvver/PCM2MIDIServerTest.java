@@ -0,0 +1,119 @@
+package ch.fhnw.tvver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.junit.Test;
+
+/**
+ * Drives the server with in-process clients over the loopback interface.
+ */
+public class PCM2MIDIServerTest {
+	private static final float SAMPLE_RATE = 44100;
+	private static final int   FRAME_SIZE  = 1024;
+	private static final long  TIMEOUT_MS  = 30000;
+
+	@Test
+	public void concurrentSessions() throws Exception {
+		int[]           keys      = {69, 60};
+		CountDownLatch  connected = new CountDownLatch(1);
+		ExecutorService clients   = Executors.newFixedThreadPool(keys.length);
+		try(PCM2MIDIServer server = new PCM2MIDIServer(PCM2MidConverter.class, keys.length, SAMPLE_RATE, 1, 16, FRAME_SIZE)) {
+			server.start(0);
+			List<Future<List<String>>> results = new ArrayList<>();
+			for(int key : keys)
+				results.add(clients.submit(() -> session(server.getPort(), key, connected)));
+
+			// both clients hold their session open until they have been counted
+			await(server::getSessionCount, keys.length);
+			connected.countDown();
+
+			for(int i = 0; i < keys.length; i++) {
+				List<String> lines = results.get(i).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+				boolean      found = false;
+				long         last  = Long.MIN_VALUE;
+				for(String line : lines) {
+					String[] fields = line.split("\t");
+					assertEquals(line, 4, fields.length);
+					long time = Long.parseLong(fields[0]);
+					assertTrue("notes out of order: " + lines, time >= last);
+					last = time;
+					assertTrue(line, fields[1].equals("on") || fields[1].equals("off"));
+					if(fields[1].equals("on") && Integer.parseInt(fields[2]) == keys[i])
+						found = true;
+				}
+				assertTrue("key " + keys[i] + " not detected: " + lines, found);
+			}
+			await(server::getSessionCount, 0);
+		} finally {
+			clients.shutdownNow();
+		}
+	}
+
+	// half a second of silence, then the tone, sent as 16 bit PCM; returns the note lines
+	private static List<String> session(int port, int key, CountDownLatch connected) throws Exception {
+		try(SocketChannel channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port))) {
+			List<String> lines  = new ArrayList<>();
+			Thread       reader = new Thread(() -> {
+				try {
+					BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.US_ASCII));
+					for(String line; (line = in.readLine()) != null; )
+						synchronized(lines) { lines.add(line); }
+				} catch(IOException e) {
+					// closed
+				}
+			});
+			reader.start();
+
+			float[] samples = new float[(int)(2 * SAMPLE_RATE)];
+			double  freq    = 440 * Math.pow(2, (key - 69) / 12.0);
+			for(int i = (int)(SAMPLE_RATE / 2); i < samples.length; i++)
+				samples[i] = (float)(0.5 * Math.sin(2 * Math.PI * freq * i / SAMPLE_RATE));
+			ByteBuffer pcm = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+			for(float sample : samples)
+				pcm.putShort((short)(sample * Short.MAX_VALUE));
+			pcm.flip();
+
+			// the silence first, the rest once the session has been counted
+			pcm.limit(FRAME_SIZE * 2 * 4);
+			while(pcm.hasRemaining())
+				channel.write(pcm);
+			connected.await();
+			pcm.limit(pcm.capacity());
+			while(pcm.hasRemaining())
+				channel.write(pcm);
+			channel.shutdownOutput();
+
+			reader.join(TIMEOUT_MS);
+			synchronized(lines) {
+				return new ArrayList<>(lines);
+			}
+		}
+	}
+
+	private static void await(IntSupplier actual, int expected) throws InterruptedException {
+		long end = System.currentTimeMillis() + TIMEOUT_MS;
+		while(actual.getAsInt() != expected && System.currentTimeMillis() < end)
+			Thread.sleep(10);
+		assertEquals(expected, actual.getAsInt());
+	}
+}
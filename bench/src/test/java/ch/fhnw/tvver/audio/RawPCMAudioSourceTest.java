@@ -0,0 +1,167 @@
+package ch.fhnw.tvver.audio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.fhnw.ether.audio.AudioFrame;
+import ch.fhnw.ether.audio.IAudioRenderTarget;
+
+public class RawPCMAudioSourceTest {
+	private static final int FRAME_SIZE = 4;
+
+	@Test
+	public void frameAlignedStreamEndsWithFullFrame() throws Exception {
+		List<AudioFrame> frames = render(new RawPCMAudioSource(channel(pcm16(12), 1000), 44100, 1, 16, FRAME_SIZE));
+		assertLengths(frames, 4, 4, 4);
+	}
+
+	@Test
+	public void partialFinalFrame() throws Exception {
+		// ten samples and half of an eleventh, which is dropped
+		byte[] pcm = Arrays.copyOf(pcm16(11), 21);
+		List<AudioFrame> frames = render(new RawPCMAudioSource(channel(pcm, 1000), 44100, 1, 16, FRAME_SIZE));
+		assertLengths(frames, 4, 4, 2);
+	}
+
+	@Test
+	public void incompleteSampleFrameIsDropped() throws Exception {
+		// stereo: eight sample frames and the left sample of a ninth
+		List<AudioFrame> frames = render(new RawPCMAudioSource(channel(pcm16(17), 1000), 44100, 2, 16, 2 * FRAME_SIZE));
+		assertLengths(frames, 8, 8);
+		// the one incomplete sample frame at the end of an aligned stream must not become an empty frame
+		frames = render(new RawPCMAudioSource(channel(pcm16(9), 1000), 44100, 2, 16, 8));
+		assertLengths(frames, 8);
+	}
+
+	@Test
+	public void emptyStreamYieldsOneSilentSampleFrame() throws Exception {
+		List<AudioFrame> frames = render(new RawPCMAudioSource(channel(new byte[0], 1000), 44100, 2, 16, 8));
+		assertLengths(frames, 2);
+		assertArrayEquals(new float[2], frames.get(0).samples, 0);
+	}
+
+	@Test
+	public void shortReadsGiveTheSameFrames() throws Exception {
+		Random random = new Random(21);
+		for(int run = 0; run < 100; run++) {
+			int    samples = random.nextInt(40);
+			byte[] pcm     = pcm16(samples);
+			List<AudioFrame> whole   = render(new RawPCMAudioSource(channel(pcm, 1000), 44100, 1, 16, FRAME_SIZE));
+			List<AudioFrame> chunked = render(new RawPCMAudioSource(channel(pcm, 1 + random.nextInt(5)), 44100, 1, 16, FRAME_SIZE));
+			assertEquals(whole.size(), chunked.size());
+			int total = 0;
+			for(int i = 0; i < whole.size(); i++) {
+				assertArrayEquals(whole.get(i).samples, chunked.get(i).samples, 0);
+				total += whole.get(i).samples.length;
+			}
+			assertEquals(Math.max(1, samples), total);
+		}
+	}
+
+	@Test
+	public void converts8BitUnsigned() throws Exception {
+		assertConverts(8, new long[] {0, 1, 127, 128, 129, 255}, new float[] {-1, -127 / 128f, -1 / 128f, 0, 1 / 128f, 127 / 128f});
+	}
+
+	@Test
+	public void converts16BitSigned() throws Exception {
+		assertConverts(16, new long[] {Short.MIN_VALUE, -1, 0, 1, 0x4000, Short.MAX_VALUE},
+				new float[] {-1, -1 / 32768f, 0, 1 / 32768f, 0.5f, 32767 / 32768f});
+	}
+
+	@Test
+	public void converts24BitSigned() throws Exception {
+		assertConverts(24, new long[] {-0x800000, -2, 0, 1, 0x400000, 0x7FFFFF},
+				new float[] {-1, -2 / 8388608f, 0, 1 / 8388608f, 0.5f, 8388607 / 8388608f});
+	}
+
+	@Test
+	public void converts32BitSigned() throws Exception {
+		assertConverts(32, new long[] {Integer.MIN_VALUE, -256, 0, 256, 0x40000000, 0x7FFFFF80},
+				new float[] {-1, -256 / 2147483648f, 0, 256 / 2147483648f, 0.5f, 0x7FFFFF80 / 2147483648f});
+	}
+
+	private static void assertConverts(int bits, long[] values, float[] expected) throws Exception {
+		int        bytes = bits / 8;
+		ByteBuffer pcm   = ByteBuffer.allocate(values.length * bytes).order(ByteOrder.LITTLE_ENDIAN);
+		for(long value : values)
+			for(int i = 0; i < bytes; i++)
+				pcm.put((byte)(value >> (8 * i)));
+		List<AudioFrame> frames = render(new RawPCMAudioSource(channel(pcm.array(), 1000), 44100, 1, bits, values.length));
+		assertLengths(frames, values.length);
+		assertArrayEquals(bits + " bit", expected, frames.get(0).samples, 0);
+	}
+
+	private static void assertLengths(List<AudioFrame> frames, int ... lengths) {
+		assertEquals("frames", lengths.length, frames.size());
+		for(int i = 0; i < lengths.length; i++) {
+			assertEquals("frame " + i, lengths[i], frames.get(i).samples.length);
+			assertEquals("last " + i, i == lengths.length - 1, frames.get(i).isLast());
+		}
+	}
+
+	private static List<AudioFrame> render(RawPCMAudioSource source) throws Exception {
+		List<AudioFrame>   frames = new ArrayList<>();
+		IAudioRenderTarget target = (IAudioRenderTarget)Proxy.newProxyInstance(IAudioRenderTarget.class.getClassLoader(),
+				new Class<?>[] {IAudioRenderTarget.class}, (proxy, method, args) -> {
+					if(method.getName().equals("setFrame"))
+						frames.add((AudioFrame)args[1]);
+					return null;
+				});
+		while(frames.isEmpty() || !(frames.get(frames.size() - 1).isLast())) {
+			assertFalse("no last frame", frames.size() > 100);
+			source.run(target);
+		}
+		for(AudioFrame frame : frames)
+			assertTrue("empty frame", frame.samples.length > 0);
+		return frames;
+	}
+
+	// a ramp, so frames in the wrong order or with missing samples show up
+	private static byte[] pcm16(int samples) {
+		ByteBuffer result = ByteBuffer.allocate(samples * 2).order(ByteOrder.LITTLE_ENDIAN);
+		for(int i = 0; i < samples; i++)
+			result.putShort((short)(i * 100 - 1000));
+		return result.array();
+	}
+
+	// hands out at most chunk bytes per read, like a pipe or a socket
+	private static ReadableByteChannel channel(byte[] data, int chunk) {
+		ByteBuffer in = ByteBuffer.wrap(data);
+		return new ReadableByteChannel() {
+			private boolean open = true;
+
+			@Override
+			public int read(ByteBuffer dst) {
+				if(!(in.hasRemaining())) return -1;
+				int count = Math.min(Math.min(chunk, in.remaining()), dst.remaining());
+				for(int i = 0; i < count; i++)
+					dst.put(in.get());
+				return count;
+			}
+
+			@Override
+			public boolean isOpen() {
+				return open;
+			}
+
+			@Override
+			public void close() {
+				open = false;
+			}
+		};
+	}
+}
@@ -0,0 +1,81 @@
+package ch.fhnw.tvver.midi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Random;
+
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiFileFormat;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ch.fhnw.tvver.NoteListener;
+
+public class MidiFileRecorderTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void readBack() throws Exception {
+		Random           random   = new Random(13);
+		MidiFileRecorder recorder = new MidiFileRecorder();
+		int              count    = 5000; // more than the initial capacity
+		long[]           times    = new long[count];
+		int[]            keys     = new int[count];
+		int[]            kinds    = new int[count];
+		int[]            velocity = new int[count];
+		long             time     = 0;
+		for(int i = 0; i < count; i++) {
+			// mostly short steps, some long enough for four byte delta times
+			time       += random.nextInt(10) == 0 ? random.nextInt(300_000_000) : random.nextInt(50_000);
+			times[i]    = time;
+			keys[i]     = random.nextInt(128);
+			kinds[i]    = random.nextInt(4);
+			velocity[i] = kinds[i] == NoteListener.NOTE_OFF ? 0 : 1 + random.nextInt(127);
+			recorder.note(times[i], keys[i], velocity[i], kinds[i]);
+		}
+		assertEquals(count, recorder.size());
+
+		File file = tmp.newFile("recorded.mid");
+		recorder.write(file);
+
+		MidiFileFormat format = MidiSystem.getMidiFileFormat(file);
+		assertEquals(0, format.getType());
+		assertEquals(Sequence.PPQ, format.getDivisionType(), 0);
+		assertEquals(500, format.getResolution());
+
+		Sequence sequence = MidiSystem.getSequence(file);
+		assertEquals(1, sequence.getTracks().length);
+		Track track = sequence.getTracks()[0];
+		// the recorded events plus end of track
+		assertEquals(count + 1, track.size());
+		for(int i = 0; i < count; i++) {
+			MidiEvent event = track.get(i);
+			assertEquals("event " + i, times[i] / 1000, event.getTick());
+			assertTrue(event.getMessage() instanceof ShortMessage);
+			ShortMessage message = (ShortMessage)event.getMessage();
+			assertEquals(kinds[i] == NoteListener.NOTE_OFF ? ShortMessage.NOTE_OFF : ShortMessage.NOTE_ON, message.getCommand());
+			assertEquals(0, message.getChannel());
+			assertEquals(keys[i], message.getData1());
+			assertEquals(velocity[i], message.getData2());
+		}
+		assertEquals(0x2F, (track.get(count).getMessage().getMessage()[1]));
+	}
+
+	@Test
+	public void emptyRecording() throws Exception {
+		File file = tmp.newFile("empty.mid");
+		new MidiFileRecorder().write(file);
+		Sequence sequence = MidiSystem.getSequence(file);
+		assertEquals(1, sequence.getTracks().length);
+		assertEquals(1, sequence.getTracks()[0].size());
+	}
+}
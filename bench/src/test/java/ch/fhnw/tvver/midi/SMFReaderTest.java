@@ -0,0 +1,137 @@
+package ch.fhnw.tvver.midi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.junit.Test;
+
+public class SMFReaderTest {
+	static final File FILES = new File("../src/files");
+
+	@Test
+	public void matchesJavaSound() throws Exception {
+		File[] files = FILES.listFiles((dir, name) -> name.endsWith(".mid"));
+		assertTrue("no MIDI files in " + FILES.getAbsolutePath(), files != null && files.length > 0);
+		for(File file : files) {
+			int[] expected = new int[128];
+			for(Track track : MidiSystem.getSequence(file).getTracks()) {
+				for(int i = 0; i < track.size(); i++) {
+					MidiMessage msg = track.get(i).getMessage();
+					if(msg instanceof ShortMessage && ((ShortMessage)msg).getCommand() == ShortMessage.NOTE_ON)
+						expected[((ShortMessage)msg).getData1()]++;
+				}
+			}
+			assertArrayEquals(file.getName(), expected, noteOns(file));
+		}
+	}
+
+	@Test
+	public void readsRunningStatusAndSkipsMeta() throws Exception {
+		byte[] smf = smf(6, 1, track(
+				0, 0xFF, 0x51, 3, 0x07, 0xA1, 0x20,  // tempo
+				0, 0x90, 60, 100,
+				0x81, 0x00, 64, 100,                 // running status, delta 128
+				0, 0xC0, 5,                          // program change, one data byte
+				0, 0x90, 60, 0,
+				0, 0xFF, 0x2F, 0));
+		Sequence sequence = MidiSystem.getSequence(new ByteArrayInputStream(smf));
+		assertEquals(1, sequence.getTracks().length);
+
+		StringBuilder events = new StringBuilder();
+		assertEquals(480, SMFReader.read(ByteBuffer.wrap(smf), (track, tick, status, data1, data2) ->
+			events.append(track).append(':').append(tick).append(':').append(Integer.toHexString(status)).append(':').append(data1).append(':').append(data2).append(' ')));
+		assertEquals("0:0:90:60:100 0:128:90:64:100 0:128:c0:5:0 0:128:90:60:0 ", events.toString());
+	}
+
+	@Test
+	public void rejectsEventPastEndOfTrack() {
+		// the velocity of the note on lies in the next chunk
+		byte[] first  = track(0, 0x90, 60, 100, 0, 0x90, 62);
+		byte[] second = track(0, 0x90, 64, 100);
+		assertInvalid(smf(6, 2, first, second));
+		// a meta event longer than its chunk
+		assertInvalid(smf(6, 2, track(0, 0xFF, 0x01, 5, 'a', 'b'), track(0, 0x90, 64, 100, 'c', 'd', 'e')));
+	}
+
+	@Test
+	public void rejectsInvalidHeaderLength() {
+		assertInvalid(smf(-1, 1, track(0, 0x90, 60, 100)));
+		assertInvalid(smf(0x7FFFFFF0, 1, track(0, 0x90, 60, 100)));
+		assertInvalid(smf(2, 1, track(0, 0x90, 60, 100)));
+	}
+
+	@Test
+	public void rejectsTruncatedFile() {
+		byte[] smf = smf(6, 1, track(0, 0x90, 60, 100, 0, 0x80, 60, 0));
+		for(int length = 0; length < smf.length; length++) {
+			byte[] truncated = new byte[length];
+			System.arraycopy(smf, 0, truncated, 0, length);
+			assertInvalid(truncated);
+		}
+	}
+
+	static int[] noteOns(File file) throws IOException, InvalidMidiDataException {
+		int[] result = new int[128];
+		SMFReader.read(file, (track, tick, status, data1, data2) -> {
+			if((status & 0xF0) == ShortMessage.NOTE_ON)
+				result[data1]++;
+		});
+		return result;
+	}
+
+	static byte[] smf(int headerLength, int tracks, byte[] ... chunks) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream      out   = new DataOutputStream(bytes);
+			out.writeBytes("MThd");
+			out.writeInt(headerLength);
+			out.writeShort(tracks > 1 ? 1 : 0);
+			out.writeShort(tracks);
+			out.writeShort(480);
+			for(byte[] chunk : chunks)
+				out.write(chunk);
+			return bytes.toByteArray();
+		} catch(IOException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	static byte[] track(int ... events) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream      out   = new DataOutputStream(bytes);
+		try {
+			out.writeBytes("MTrk");
+			out.writeInt(events.length);
+			for(int b : events)
+				out.writeByte(b);
+		} catch(IOException e) {
+			throw new AssertionError(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void assertInvalid(byte[] smf) {
+		try {
+			SMFReader.read(ByteBuffer.wrap(smf), (track, tick, status, data1, data2) -> {});
+			fail("accepted " + smf.length + " bytes");
+		} catch(InvalidMidiDataException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package ch.fhnw.tvver.onsetdetection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.fhnw.ether.audio.AudioUtilities.Window;
+import ch.fhnw.ether.audio.fx.FFT;
+import ch.fhnw.tvver.DetectorParameters;
+import ch.fhnw.tvver.onsetdetection.OnSetDetection.ThresholdMode;
+import ch.fhnw.tvver.pitchdetection.PitchDetection;
+import ch.fhnw.tvver.pitchdetection.PitchDetectionResult;
+
+public class OnSetDetectionTest {
+    private static final int BANDS = OnSetDetection.bands.length / 2;
+    // two hours of 1024 sample frames at 44.1 kHz
+    private static final int HOURS_OF_FRAMES = (int) (2 * 3600 * 44100L / 1024);
+
+    @Test
+    public void medianThresholdIsTakenOverPreviousFramesOnly() {
+        for (int frames : new int[] {1, 5, 6}) {
+            Random random = new Random(frames);
+            OnSetDetection osd = detection(ThresholdMode.MEDIAN, frames, new CountingPitchDetection());
+            float[][] powers = powers(random, 500);
+            float[][] flux = new float[powers.length][BANDS];
+            for (int n = 0; n < powers.length; n++) {
+                for (int band = 0; band < BANDS; band++) {
+                    double value = powers[n][band] - (n == 0 ? 0 : powers[n - 1][band]);
+                    flux[n][band] = (float) (value < 0 ? 0 : Math.round(value * 10.0) / 10.0);
+                }
+                osd.process(powers[n], 1);
+                for (int band = 0; band < BANDS; band++) {
+                    // the window ends before frame n, a peak in frame n cannot raise its own threshold
+                    float expected = Float.POSITIVE_INFINITY;
+                    if (n > 0) {
+                        float[] window = new float[Math.min(n, frames)];
+                        for (int i = 0; i < window.length; i++) {
+                            window[i] = flux[n - window.length + i][band];
+                        }
+                        expected = (float) (Math.round(median(window) * 10.0) / 10.0) * 2f;
+                    }
+                    assertEquals(frames + " frames, frame " + n + " band " + band, expected, osd.getThreshold(band), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void medianDecisionDoesNotDependOnEarlierHistory() {
+        for (int frames : new int[] {5, 6}) {
+            Random random = new Random(100 + frames);
+            float[][] history = powers(random, 2000);
+            float[][] tail = powers(random, 1000);
+            float[] energies = new float[tail.length];
+            for (int n = 0; n < energies.length; n++) {
+                energies[n] = random.nextFloat();
+            }
+
+            CountingPitchDetection longCount = new CountingPitchDetection();
+            CountingPitchDetection shortCount = new CountingPitchDetection();
+            OnSetDetection longHistory = detection(ThresholdMode.MEDIAN, frames, longCount);
+            OnSetDetection shortHistory = detection(ThresholdMode.MEDIAN, frames, shortCount);
+            for (float[] frame : history) {
+                longHistory.process(frame, random.nextFloat());
+            }
+
+            // the first tail frame has a different flux for both, it leaves the window after frames + 1 frames
+            int detections = 0;
+            for (int n = 0; n < tail.length; n++) {
+                longHistory.process(tail[n], energies[n]);
+                shortHistory.process(tail[n], energies[n]);
+                if (n <= frames + 1) {
+                    longCount.count = shortCount.count = 0;
+                    continue;
+                }
+                for (int band = 0; band < BANDS; band++) {
+                    assertEquals("frame " + n, longHistory.getThreshold(band), shortHistory.getThreshold(band), 0);
+                }
+                assertEquals("frame " + n, longHistory.tone, shortHistory.tone);
+                assertEquals("frame " + n, longCount.count, shortCount.count);
+                detections = shortCount.count;
+            }
+            assertTrue("only " + detections + " onsets", detections > 10);
+        }
+    }
+
+    @Test
+    public void hoursOfFramesDoNotAllocate() {
+        com.sun.management.ThreadMXBean threads = threadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (ThresholdMode mode : ThresholdMode.values()) {
+            CountingPitchDetection count = new CountingPitchDetection();
+            OnSetDetection osd = detection(mode, OnSetDetection.THRESHOLD_FRAMES, count);
+            Random random = new Random(5);
+            float[] powers = new float[BANDS];
+            for (int n = 0; n < 10000; n++) {
+                osd.process(next(random, powers), random.nextFloat());
+            }
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int n = 0; n < HOURS_OF_FRAMES; n++) {
+                osd.process(next(random, powers), random.nextFloat());
+            }
+            long allocated = threads.getThreadAllocatedBytes(thread) - before;
+            // the measurement itself may allocate a few bytes, anything per frame is megabytes
+            assertTrue(mode + " allocated " + allocated + " bytes over " + HOURS_OF_FRAMES + " frames (" + count.count + " onsets)", allocated < 1024);
+            assertTrue(mode + " detected nothing", count.count > 0);
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean result = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(result.isThreadAllocatedMemorySupported());
+        result.setThreadAllocatedMemoryEnabled(true);
+        return result;
+    }
+
+    // the next frame of powers(), in place
+    private static float[] next(Random random, float[] powers) {
+        boolean onset = random.nextInt(8) == 0;
+        for (int band = 0; band < BANDS; band++) {
+            powers[band] = onset ? powers[band] + 50 + random.nextFloat() * 200 : powers[band] * 0.8f + random.nextFloat() * 2;
+        }
+        return powers;
+    }
+
+    static OnSetDetection detection(ThresholdMode mode, int frames, PitchDetection pitchDetection) {
+        return new OnSetDetection(new FFT(DetectorParameters.A_SUB_CONTRA_OCTAVE_FREQ, Window.HANN), pitchDetection, OnSetDetection.bands, OnSetDetection.FLUX_THRESHOLD,
+                OnSetDetection.MIN_FLUX, OnSetDetection.ENERGY_RISE, mode, frames);
+    }
+
+    // band powers of a noise floor with a note starting now and then, decaying afterwards
+    static float[][] powers(Random random, int count) {
+        float[][] result = new float[count][BANDS];
+        float[] level = new float[BANDS];
+        for (int n = 0; n < count; n++) {
+            boolean onset = random.nextInt(8) == 0;
+            for (int band = 0; band < BANDS; band++) {
+                level[band] = onset ? level[band] + 50 + random.nextFloat() * 200 : level[band] * 0.8f;
+                result[n][band] = level[band] + random.nextFloat() * 10;
+            }
+        }
+        return result;
+    }
+
+    private static float median(float[] window) {
+        float[] sorted = window.clone();
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) * 0.5f;
+    }
+
+    static final class CountingPitchDetection implements PitchDetection {
+        int count;
+
+        @Override
+        public void detectPitch() {
+            this.count++;
+        }
+
+        @Override
+        public PitchDetectionResult getResult() {
+            return null;
+        }
+
+        @Override
+        public int getPackedResult() {
+            return PitchDetectionResult.NONE;
+        }
+
+        @Override
+        public void clearResult() {
+        }
+    }
+}
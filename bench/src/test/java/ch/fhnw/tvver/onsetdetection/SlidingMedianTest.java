@@ -0,0 +1,84 @@
+package ch.fhnw.tvver.onsetdetection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SlidingMedianTest {
+
+    @Test
+    public void matchesSortedWindow() {
+        Random random = new Random(20);
+        for (int capacity = 1; capacity <= 40; capacity++) {
+            for (int distinct : new int[] {2, 5, 1000}) {
+                check(random, capacity, distinct, 20 * capacity + 100);
+            }
+        }
+        // long windows and streams
+        check(random, 1023, 1000, 10000);
+        check(random, 1024, 7, 10000);
+    }
+
+    @Test
+    public void constantAndMonotoneStreams() {
+        for (int capacity : new int[] {1, 2, 5, 6}) {
+            SlidingMedian median = new SlidingMedian(capacity);
+            for (int i = 0; i < 50; i++) {
+                median.add(3);
+                assertEquals(3, median.median(), 0);
+            }
+            // rising then falling, every value leaves through the opposite heap
+            float[] window = new float[0];
+            median = new SlidingMedian(capacity);
+            for (int i = 0; i < 200; i++) {
+                float value = i < 100 ? i : 200 - i;
+                median.add(value);
+                window = slide(window, value, capacity);
+                assertEquals(expected(window), median.median(), 0);
+            }
+        }
+    }
+
+    @Test
+    public void emptyMedianIsNaN() {
+        SlidingMedian median = new SlidingMedian(3);
+        assertTrue(Float.isNaN(median.median()));
+        assertEquals(0, median.size());
+        assertEquals(3, median.capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyWindow() {
+        new SlidingMedian(0);
+    }
+
+    // values from a small set give many duplicates, which must not confuse the slot positions
+    private static void check(Random random, int capacity, int distinct, int count) {
+        SlidingMedian median = new SlidingMedian(capacity);
+        float[] window = new float[0];
+        for (int i = 0; i < count; i++) {
+            float value = random.nextInt(distinct) - distinct / 2 + (distinct > 100 ? random.nextFloat() : 0);
+            median.add(value);
+            window = slide(window, value, capacity);
+            assertEquals("capacity " + capacity + " value " + i, Math.min(i + 1, capacity), median.size());
+            assertEquals("capacity " + capacity + " value " + i, expected(window), median.median(), 0);
+        }
+    }
+
+    private static float[] slide(float[] window, float value, int capacity) {
+        float[] result = Arrays.copyOfRange(window, window.length < capacity ? 0 : 1, window.length + 1);
+        result[result.length - 1] = value;
+        return result;
+    }
+
+    private static float expected(float[] window) {
+        float[] sorted = window.clone();
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) * 0.5f;
+    }
+}
@@ -0,0 +1,116 @@
+package ch.fhnw.tvver.onsetdetection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SpectralFluxHistoryTest {
+
+    private static final int BANDS = 3;
+
+    /**
+     * The threshold as computed before the ring buffer: the whole flux list was
+     * kept and the frames idx-5..idx summed as floats, divided by end - start.
+     */
+    @Test
+    public void matchesUnboundedWindow() {
+        Random random = new Random(5);
+        List<float[]> all = new ArrayList<>();
+        SpectralFluxHistory history = new SpectralFluxHistory(BANDS, OnSetDetection.THRESHOLD_FRAMES + 1);
+        for (int idx = 0; idx < 1000; idx++) {
+            float[] flux = flux(random);
+            all.add(flux.clone());
+            history.add(flux);
+
+            int start = Math.max(0, idx - OnSetDetection.THRESHOLD_FRAMES);
+            int end = idx;
+            assertEquals(end - start, history.size() - 1);
+            for (int band = 0; band < BANDS; band++) {
+                float sum = 0;
+                for (int i = start; i <= end; i++) {
+                    sum += all.get(i)[band];
+                }
+                float expected = sum / (end - start);
+                float actual = history.sum(band) / (history.size() - 1);
+                if (idx == 0) {
+                    assertEquals(Float.isNaN(expected), Float.isNaN(actual));
+                    assertEquals(Float.isInfinite(expected), Float.isInfinite(actual));
+                } else {
+                    assertEquals("frame " + idx + " band " + band, expected, actual, 1e-5f * Math.abs(expected) + 1e-6f);
+                }
+                for (int age = 0; age < history.size(); age++) {
+                    assertEquals(all.get(idx - age)[band], history.get(age, band), 0f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void resyncsOnWrap() {
+        // mixed magnitudes make the running sums drift, the resync on each wrap
+        // must bring them back to the exact sum of the window
+        Random random = new Random(6);
+        int capacity = 7;
+        SpectralFluxHistory history = new SpectralFluxHistory(BANDS, capacity);
+        List<float[]> all = new ArrayList<>();
+        for (int frame = 1; frame <= capacity * 500; frame++) {
+            float[] flux = new float[BANDS];
+            for (int band = 0; band < BANDS; band++) {
+                flux[band] = random.nextBoolean() ? random.nextFloat() * 1e7f : random.nextFloat() * 1e-3f;
+            }
+            all.add(flux);
+            history.add(flux);
+            if (frame % capacity == 0) {
+                for (int band = 0; band < BANDS; band++) {
+                    double sum = 0;
+                    for (int i = all.size() - capacity; i < all.size(); i++) {
+                        sum += all.get(i)[band];
+                    }
+                    assertEquals("frame " + frame, (float) sum, history.sum(band), 0f);
+                }
+            }
+        }
+        assertEquals(capacity, history.size());
+    }
+
+    @Test
+    public void addDoesNotAllocate() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        SpectralFluxHistory history = new SpectralFluxHistory(BANDS, OnSetDetection.THRESHOLD_FRAMES + 1);
+        float[] flux = flux(new Random(7));
+        float check = 0;
+        for (int i = 0; i < 100000; i++) {
+            history.add(flux);
+            check += history.sum(i % BANDS);
+        }
+        long thread = Thread.currentThread().getId();
+        int frames = 100000;
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < frames; i++) {
+            flux[i % BANDS] = i;
+            history.add(flux);
+            check += history.sum(i % BANDS);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertTrue("allocated " + allocated + " bytes (" + check + ")", allocated < 1024);
+    }
+
+    private static float[] flux(Random random) {
+        float[] result = new float[BANDS];
+        for (int band = 0; band < BANDS; band++) {
+            result[band] = Math.round(random.nextFloat() * 1000) / 10f;
+        }
+        return result;
+    }
+}
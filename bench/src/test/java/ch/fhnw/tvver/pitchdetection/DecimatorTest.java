@@ -0,0 +1,168 @@
+package ch.fhnw.tvver.pitchdetection;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.fhnw.ether.audio.AudioFrame;
+import ch.fhnw.ether.audio.IAudioRenderTarget;
+import ch.fhnw.tvver.pitchdetection.YinPitchDetection.DifferenceFunction;
+
+public class DecimatorTest {
+	private static final float SAMPLE_RATE = 44100;
+	private static final int   FRAME_SIZE  = 1024;
+	// the top notes of the sweep and the benchmark: C8, C7 and C6
+	private static final int[] TOP_KEYS    = {108, 96, 84};
+
+	@Test
+	public void factorPerTopNote() {
+		int[][] factors = {{4, 8, 16}, {4, 9, 18}};
+		float[] rates   = {44100, 48000};
+		for(int r = 0; r < rates.length; r++)
+			for(int i = 0; i < TOP_KEYS.length; i++) {
+				Decimator decimator = new Decimator(MidiNoteUtils.getMidiNote(TOP_KEYS[i]));
+				decimator.setSampleRate(rates[r]);
+				assertEquals(rates[r] + " Hz key " + TOP_KEYS[i], factors[r][i], decimator.getFactor());
+				assertEquals(factors[r][i], Decimator.getFactor(rates[r], MidiNoteUtils.getMidiNote(TOP_KEYS[i]).getFrequency()));
+				assertEquals(rates[r] / factors[r][i], decimator.getOutputRate(), 0);
+			}
+		// nothing to gain above a fifth of the rate
+		assertEquals(1, Decimator.getFactor(SAMPLE_RATE, 10000));
+	}
+
+	@Test
+	public void passesToneBelowCutoff() {
+		for(int key : TOP_KEYS) {
+			float maxFrequency = MidiNoteUtils.getMidiNote(key).getFrequency();
+			for(double frequency : new double[] {55, 440, maxFrequency * 0.5, maxFrequency}) {
+				Decimator decimator = decimated(maxFrequency, sine(frequency, 1, 4 * FRAME_SIZE * 16));
+				float[]   output    = Arrays.copyOf(decimator.getOutput(), decimator.getOutputLength());
+				// the tone at the decimated rate with its amplitude, away from the start of the filter
+				double amplitude = amplitude(output, output.length / 4, frequency, decimator.getOutputRate());
+				// the highest frequency itself lies where the pass band starts to roll off
+				assertEquals(key + " " + frequency + " Hz", 1, amplitude, frequency < maxFrequency ? 0.01 : 0.02);
+			}
+		}
+	}
+
+	@Test
+	public void attenuatesToneAboveOutputNyquist() {
+		for(int key : TOP_KEYS) {
+			float maxFrequency = MidiNoteUtils.getMidiNote(key).getFrequency();
+			int   factor       = Decimator.getFactor(SAMPLE_RATE, maxFrequency);
+			float nyquist      = SAMPLE_RATE / factor / 2;
+			for(double frequency : new double[] {nyquist * 1.2, nyquist * 1.7, nyquist * 3.3, SAMPLE_RATE / 2 * 0.9}) {
+				Decimator decimator = decimated(maxFrequency, sine(frequency, 1, 4 * FRAME_SIZE * 16));
+				float[]   output    = Arrays.copyOf(decimator.getOutput(), decimator.getOutputLength());
+				// where the tone would fold to without the low pass
+				double alias = Math.abs(frequency - Math.rint(frequency / (2 * nyquist)) * 2 * nyquist);
+				double rms   = 0;
+				for(int i = output.length / 4; i < output.length; i++)
+					rms += output[i] * output[i];
+				rms = Math.sqrt(rms / (output.length - output.length / 4));
+				assertTrue(key + " " + frequency + " Hz rms " + rms, rms < 0.01);
+				assertTrue(key + " " + frequency + " Hz alias at " + alias, amplitude(output, output.length / 4, alias, decimator.getOutputRate()) < 0.01);
+			}
+		}
+	}
+
+	@Test
+	public void disabledOutputKeepsTheStream() {
+		Random random = new Random(23);
+		float[] stream = new float[200000];
+		for(int i = 0; i < stream.length; i++)
+			stream[i] = random.nextFloat() * 2 - 1;
+		for(int key : TOP_KEYS) {
+			Decimator always    = new Decimator(MidiNoteUtils.getMidiNote(key));
+			Decimator sometimes = new Decimator(MidiNoteUtils.getMidiNote(key));
+			always.setSampleRate(SAMPLE_RATE);
+			sometimes.setSampleRate(SAMPLE_RATE);
+			int enabled = 0;
+			for(int from = 0; from < stream.length; ) {
+				// odd chunk sizes, so the phase of the decimation moves between chunks
+				float[] chunk = Arrays.copyOfRange(stream, from, Math.min(stream.length, from + 1 + random.nextInt(3000)));
+				from += chunk.length;
+				boolean on = random.nextBoolean();
+				sometimes.setOutputEnabled(on);
+				always.process(chunk);
+				sometimes.process(chunk);
+				if(on) {
+					assertArrayEquals("key " + key + " at " + from,
+							Arrays.copyOf(always.getOutput(), always.getOutputLength()),
+							Arrays.copyOf(sometimes.getOutput(), sometimes.getOutputLength()), 0);
+					enabled++;
+				} else {
+					assertEquals(0, sometimes.getOutputLength());
+				}
+			}
+			assertTrue(enabled > 10);
+		}
+	}
+
+	@Test
+	public void decimatedYinDetectsPitch() throws Exception {
+		for(int top : TOP_KEYS) {
+			for(int key = 40; key <= top - 3; key += 7) {
+				Decimator         decimator = new Decimator(MidiNoteUtils.getMidiNote(top));
+				// the same time span at every factor
+				int               factor    = Decimator.getFactor(SAMPLE_RATE, MidiNoteUtils.getMidiNote(top).getFrequency());
+				YinPitchDetection yin       = new YinPitchDetection(2 * FRAME_SIZE / factor, DifferenceFunction.DIRECT, YinPitchDetection.THRESHOLD, decimator);
+				AudioFrame[]      frame     = {null};
+				IAudioRenderTarget target   = (IAudioRenderTarget)Proxy.newProxyInstance(IAudioRenderTarget.class.getClassLoader(),
+						new Class<?>[] {IAudioRenderTarget.class}, (proxy, method, args) -> {
+							switch(method.getName()) {
+							case "getFrame":      return frame[0];
+							case "getSampleRate": return SAMPLE_RATE;
+							default:              return null;
+							}
+						});
+				float[] tone = sine(440 * Math.pow(2, (key - 69) / 12.0), 0.8, 8 * FRAME_SIZE);
+				for(int i = 0; i < 8; i++) {
+					// the onset a few frames in, the filter history is already filled
+					if(i == 4) yin.detectPitch();
+					frame[0] = new AudioFrame(0, 1, SAMPLE_RATE, Arrays.copyOfRange(tone, i * FRAME_SIZE, (i + 1) * FRAME_SIZE));
+					decimator.run(target);
+					yin.run(target);
+				}
+				int packed = yin.getPackedResult();
+				assertTrue("top " + top + " key " + key, PitchDetectionResult.isPitched(packed));
+				assertEquals("top " + top, key, PitchDetectionResult.getMidiKey(packed));
+			}
+		}
+	}
+
+	private static Decimator decimated(float maxFrequency, float[] samples) {
+		Decimator decimator = new Decimator(maxFrequency);
+		decimator.setSampleRate(SAMPLE_RATE);
+		decimator.process(samples);
+		return decimator;
+	}
+
+	private static float[] sine(double frequency, double amplitude, int length) {
+		float[] result = new float[length];
+		for(int i = 0; i < length; i++)
+			result[i] = (float)(amplitude * Math.sin(2 * Math.PI * frequency * i / SAMPLE_RATE));
+		return result;
+	}
+
+	// amplitude of the component at frequency, over a whole number of periods
+	private static double amplitude(float[] samples, int from, double frequency, float sampleRate) {
+		int    length = samples.length - from;
+		if(frequency > 0)
+			length = Math.max(1, (int)(Math.floor(length * frequency / sampleRate) * sampleRate / frequency));
+		double re = 0;
+		double im = 0;
+		for(int i = 0; i < length; i++) {
+			double angle = 2 * Math.PI * frequency * i / sampleRate;
+			re += samples[from + i] * Math.cos(angle);
+			im += samples[from + i] * Math.sin(angle);
+		}
+		return 2 * Math.hypot(re, im) / length;
+	}
+}
@@ -0,0 +1,55 @@
+package ch.fhnw.tvver.pitchdetection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FFTDifferenceFunctionTest {
+	// relative to the difference itself, with the energy of both windows as floor for lags near a period
+	private static final double RELATIVE_ERROR = 1e-4;
+	private static final double ENERGY_ERROR   = 1e-6;
+
+	@Test
+	public void matchesDirectOnRandomBuffers() {
+		Random random = new Random(1);
+		for(int bufferSize : new int[] {1024, 1400, 2048})
+			for(int run = 0; run < 20; run++)
+				assertMatchesDirect(random, bufferSize);
+	}
+
+	@Test
+	public void matchesDirectOnPeriodicBuffer() {
+		float[] samples = new float[1400];
+		for(int i = 0; i < samples.length; i++)
+			samples[i] = (float)Math.sin(2 * Math.PI * 440 * i / 44100);
+		assertMatchesDirect(samples);
+	}
+
+	private static void assertMatchesDirect(Random random, int bufferSize) {
+		float[] samples = new float[bufferSize];
+		for(int i = 0; i < samples.length; i++)
+			samples[i] = random.nextFloat() * 2 - 1;
+		assertMatchesDirect(samples);
+	}
+
+	private static void assertMatchesDirect(float[] samples) {
+		int     window = samples.length / 2;
+		float[] direct = new float[window];
+		float[] fft    = new float[window];
+		YinKernels.SCALAR.difference(samples, direct);
+		new FFTDifferenceFunction(samples.length).apply(samples, fft);
+
+		assertEquals(0, fft[0], 0);
+		for(int lag = 1; lag < window; lag++) {
+			double energy = 0;
+			for(int i = 0; i < window; i++)
+				energy += samples[i] * samples[i] + samples[i + lag] * samples[i + lag];
+			double error = Math.abs(fft[lag] - direct[lag]);
+			assertTrue("lag " + lag + " of " + samples.length + ": " + fft[lag] + " vs " + direct[lag],
+					error <= RELATIVE_ERROR * direct[lag] + ENERGY_ERROR * energy);
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package ch.fhnw.tvver.pitchdetection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MidiNoteUtilsTest {
+	private static final MidiNote[] NOTES = MidiNote.values();
+
+	@Test
+	public void nearestNoteMatchesScan() {
+		// geometric sweep from below key 0 to far above key 127
+		for(double f = 1; f < 40000; f *= 1.0001)
+			assertNearest((float)f);
+		// both sides of every note and of every midpoint between neighbours
+		for(int key = 0; key < NOTES.length; key++) {
+			float note = NOTES[key].getFrequency();
+			assertNearest(note);
+			assertNearest(Math.nextDown(note));
+			assertNearest(Math.nextUp(note));
+			if(key + 1 < NOTES.length) {
+				float mid = (note + NOTES[key + 1].getFrequency()) / 2;
+				assertNearest(mid);
+				assertNearest(Math.nextDown(mid));
+				assertNearest(Math.nextUp(mid));
+			}
+		}
+		for(float f : new float[] {-1, 0, Float.MIN_VALUE, 1e-3f, 13000, 1e6f, Float.MAX_VALUE, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY})
+			assertNearest(f);
+		assertNull(MidiNoteUtils.getNearestMidiNote(Float.NaN));
+		assertNull(scan(Float.NaN));
+	}
+
+	@Test
+	public void packedPitchCents() {
+		for(int key = 1; key < NOTES.length - 1; key++) {
+			for(int cents = -49; cents <= 49; cents++) {
+				float frequency = (float)(NOTES[key].getFrequency() * Math.pow(2, cents / 1200.0));
+				int   packed    = MidiNoteUtils.getPackedPitch(frequency);
+				assertTrue(PitchDetectionResult.isPitched(packed));
+				assertEquals(key + " " + cents, key, PitchDetectionResult.getMidiKey(packed));
+				assertEquals(key + " " + cents, cents, PitchDetectionResult.getCents(packed));
+			}
+		}
+		// within the range of the notes, the cents are the deviation from the nearest one
+		for(double f = 20; f < 12500; f *= 1.0003) {
+			int packed = MidiNoteUtils.getPackedPitch((float)f);
+			int key    = PitchDetectionResult.getMidiKey(packed);
+			assertEquals(MidiNoteUtils.getNearestMidiKey((float)f), key);
+			float deviation = MidiNoteUtils.getCentsDeviation((float)f, NOTES[key]);
+			assertEquals(f + " Hz", deviation, PitchDetectionResult.getCents(packed), 0.5 + 1e-3);
+			// nearest in Hz is at most a cent past the half tone
+			assertTrue(f + " Hz " + deviation, Math.abs(deviation) < 51);
+		}
+	}
+
+	@Test
+	public void centsDeviation() {
+		for(MidiNote note : NOTES) {
+			for(int cents = -1200; cents <= 1200; cents += 25) {
+				float frequency = (float)(note.getFrequency() * Math.pow(2, cents / 1200.0));
+				assertEquals(note + " " + cents, cents, MidiNoteUtils.getCentsDeviation(frequency, note), 1e-3);
+			}
+		}
+		assertEquals(1200, MidiNoteUtils.getCentsDeviation(880, MidiNoteUtils.getMidiNote(69)), 1e-4);
+		assertEquals(-100, MidiNoteUtils.getCentsDeviation(MidiNoteUtils.getMidiNote(68).getFrequency(), MidiNoteUtils.getMidiNote(69)), 1e-3);
+	}
+
+	private static void assertNearest(float frequency) {
+		assertSame(frequency + " Hz", scan(frequency), MidiNoteUtils.getNearestMidiNote(frequency));
+		assertEquals(frequency + " Hz", scan(frequency).getId(), MidiNoteUtils.getNearestMidiKey(frequency));
+	}
+
+	// the lookup as it was before the closed form
+	private static MidiNote scan(float frequency) {
+		MidiNote lower = null;
+		MidiNote upper = null;
+		for(MidiNote note : MidiNote.values()) {
+			if(Float.compare(frequency, note.getFrequency()) == 0) {
+				return note;
+			} else if(frequency > note.getFrequency()) {
+				lower = note;
+			} else if(frequency < note.getFrequency()) {
+				upper = note;
+				break;
+			}
+		}
+		if(lower == null) {
+			return upper;
+		} else if(upper == null) {
+			return lower;
+		} else {
+			float diff1 = frequency - lower.getFrequency();
+			float diff2 = upper.getFrequency() - frequency;
+			return diff1 <= diff2 ? lower : upper;
+		}
+	}
+}
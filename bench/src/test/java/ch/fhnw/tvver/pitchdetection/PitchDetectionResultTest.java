@@ -0,0 +1,43 @@
+package ch.fhnw.tvver.pitchdetection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PitchDetectionResultTest {
+	@Test
+	public void noneIsZeroAndAbsent() {
+		assertEquals(0, PitchDetectionResult.NONE);
+		assertFalse(PitchDetectionResult.isPresent(PitchDetectionResult.NONE));
+		assertFalse(PitchDetectionResult.isPitched(PitchDetectionResult.NONE));
+	}
+
+	@Test
+	public void packRoundTrip() {
+		for(int key = 0; key < 128; key++) {
+			for(int cents = -50; cents <= 50; cents++) {
+				for(boolean pitched : new boolean[] {false, true}) {
+					int packed = PitchDetectionResult.pack(key, pitched, cents);
+					assertNotEquals(PitchDetectionResult.NONE, packed);
+					assertTrue(PitchDetectionResult.isPresent(packed));
+					assertEquals(pitched, PitchDetectionResult.isPitched(packed));
+					assertEquals(key, PitchDetectionResult.getMidiKey(packed));
+					assertEquals(cents, PitchDetectionResult.getCents(packed));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void packedPitchMatchesNote() {
+		for(MidiNote note : MidiNote.values()) {
+			int packed = MidiNoteUtils.getPackedPitch(note.getFrequency());
+			assertTrue(PitchDetectionResult.isPitched(packed));
+			assertEquals(note.getId(), PitchDetectionResult.getMidiKey(packed));
+			assertEquals(0, PitchDetectionResult.getCents(packed));
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package ch.fhnw.tvver.pitchdetection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class YinKernelsTest {
+	private static final int[] BUFFER_SIZES = {1, 2, 7, 64, 1023, 1400, 2048};
+
+	@Test
+	public void unrolledIsBitIdenticalToScalar() {
+		Random random = new Random(3);
+		for(int bufferSize : BUFFER_SIZES) {
+			for(int run = 0; run < 10; run++) {
+				float[] samples  = samples(random, bufferSize);
+				float[] scalar   = new float[bufferSize / 2];
+				float[] unrolled = new float[bufferSize / 2];
+
+				YinKernels.SCALAR.difference(samples, scalar);
+				YinKernels.UNROLLED.difference(samples, unrolled);
+				assertBitIdentical("difference", scalar, unrolled);
+
+				if(scalar.length == 0) continue;
+				YinKernels.SCALAR.cumulativeMeanNormalization(scalar);
+				YinKernels.UNROLLED.cumulativeMeanNormalization(unrolled);
+				assertBitIdentical("normalization", scalar, unrolled);
+
+				for(double threshold : new double[] {0, 0.1, 0.4, 1, 2})
+					for(int from = 0; from <= scalar.length; from++)
+						assertEquals(YinKernels.SCALAR.firstBelow(scalar, from, threshold), YinKernels.UNROLLED.firstBelow(unrolled, from, threshold));
+
+				assertEquals(Double.doubleToLongBits(YinKernels.SCALAR.sum(samples, 1, samples.length)),
+						Double.doubleToLongBits(YinKernels.UNROLLED.sum(samples, 1, samples.length)));
+			}
+		}
+	}
+
+	@Test
+	public void vectorMatchesScalar() {
+		YinKernels vector = YinKernels.vector();
+		assumeNotNull(vector);
+
+		Random random = new Random(4);
+		for(int bufferSize : BUFFER_SIZES) {
+			for(int run = 0; run < 10; run++) {
+				float[] samples = samples(random, bufferSize);
+				float[] scalar  = new float[bufferSize / 2];
+				float[] simd    = new float[bufferSize / 2];
+
+				YinKernels.SCALAR.difference(samples, scalar);
+				vector.difference(samples, simd);
+				for(int lag = 0; lag < scalar.length; lag++)
+					assertEquals("lag " + lag, scalar[lag], simd[lag], 1e-4 * scalar[lag]);
+
+				// same input for the remaining kernels, the normalization itself is scalar
+				System.arraycopy(scalar, 0, simd, 0, scalar.length);
+				if(scalar.length == 0) continue;
+				YinKernels.SCALAR.cumulativeMeanNormalization(scalar);
+				vector.cumulativeMeanNormalization(simd);
+				assertBitIdentical("normalization", scalar, simd);
+
+				for(double threshold : new double[] {0, 0.1, 0.4, 1, 2, scalar[scalar.length / 2]})
+					for(int from = 0; from <= scalar.length; from++)
+						assertEquals(YinKernels.SCALAR.firstBelow(scalar, from, threshold), vector.firstBelow(simd, from, threshold));
+
+				for(int from = 0; from < samples.length; from += 13) {
+					double expected = YinKernels.SCALAR.sum(samples, from, samples.length);
+					assertEquals(expected, vector.sum(samples, from, samples.length), 1e-4 * (samples.length - from));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void vectorFirstBelowComparesLikeDouble() {
+		YinKernels vector = YinKernels.vector();
+		assumeNotNull(vector);
+
+		// 0.4 is not a float, both neighbours must land on the same side as with the double comparison
+		float   below   = Math.nextDown((float)0.4);
+		float   above   = Math.nextUp((float)0.4);
+		float[] values  = {1, 1, (float)0.4, above, below, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1};
+		for(int from = 0; from < values.length; from++)
+			assertEquals(YinKernels.SCALAR.firstBelow(values, from, 0.4), vector.firstBelow(values, from, 0.4));
+	}
+
+	private static float[] samples(Random random, int length) {
+		float[] result = new float[length];
+		for(int i = 0; i < length; i++)
+			result[i] = random.nextFloat() * 2 - 1;
+		return result;
+	}
+
+	private static void assertBitIdentical(String what, float[] expected, float[] actual) {
+		assertEquals(expected.length, actual.length);
+		for(int i = 0; i < expected.length; i++)
+			assertTrue(what + " at " + i + ": " + expected[i] + " vs " + actual[i],
+					Float.floatToIntBits(expected[i]) == Float.floatToIntBits(actual[i]));
+	}
+}
@@ -0,0 +1,154 @@
+package ch.fhnw.tvver.pitchdetection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.fhnw.ether.audio.AudioFrame;
+import ch.fhnw.ether.audio.IAudioRenderTarget;
+import ch.fhnw.tvver.pitchdetection.YinPitchDetection.DifferenceFunction;
+
+public class YinPitchDetectionTest {
+	private static final float SAMPLE_RATE = 44100;
+	private static final int   WARMUP      = 5000;
+	private static final int   DETECTIONS  = 2000;
+	private static final int[] BUFFER_SIZES = {1024, 1400, 2048};
+	private static final double[] THRESHOLDS = {0.1, 0.2, 0.4};
+	private static final YinKernels[] KERNELS = {YinKernels.SCALAR, YinKernels.UNROLLED};
+
+	@Test
+	public void detectsTone() {
+		for(DifferenceFunction df : DifferenceFunction.values()) {
+			int packed = new YinPitchDetection(YinPitchDetection.AUDIO_BUFFER_SIZE, df).detect(tone(69, 2048), SAMPLE_RATE);
+			assertTrue(df.toString(), PitchDetectionResult.isPitched(packed));
+			assertEquals(df.toString(), 69, PitchDetectionResult.getMidiKey(packed));
+		}
+	}
+
+	@Test
+	public void ignoresEmptyFrames() throws Exception {
+		YinPitchDetection  yin    = new YinPitchDetection(YinPitchDetection.AUDIO_BUFFER_SIZE, DifferenceFunction.DIRECT);
+		float[]            tone   = tone(69, YinPitchDetection.AUDIO_BUFFER_SIZE);
+		AudioFrame[]       frame  = {null};
+		IAudioRenderTarget target = (IAudioRenderTarget)Proxy.newProxyInstance(IAudioRenderTarget.class.getClassLoader(),
+				new Class<?>[] {IAudioRenderTarget.class}, (proxy, method, args) -> {
+					switch(method.getName()) {
+					case "getFrame":      return frame[0];
+					case "getSampleRate": return SAMPLE_RATE;
+					default:              return null;
+					}
+				});
+		yin.detectPitch();
+		// an empty frame at end of stream, before and between the halves of the buffer
+		for(float[] samples : new float[][] {new float[0], Arrays.copyOf(tone, tone.length / 2), new float[0], Arrays.copyOfRange(tone, tone.length / 2, tone.length)}) {
+			frame[0] = new AudioFrame(0, 1, SAMPLE_RATE, samples);
+			yin.run(target);
+		}
+		assertTrue(PitchDetectionResult.isPitched(yin.getPackedResult()));
+		assertEquals(69, PitchDetectionResult.getMidiKey(yin.getPackedResult()));
+	}
+
+	@Test
+	public void incrementalMatchesDirect() {
+		Random random = new Random(5);
+		for(YinKernels kernels : KERNELS) {
+			for(int bufferSize : BUFFER_SIZES) {
+				for(double threshold : THRESHOLDS) {
+					YinPitchDetection direct      = new YinPitchDetection(bufferSize, DifferenceFunction.DIRECT, threshold, null, kernels);
+					YinPitchDetection incremental = new YinPitchDetection(bufferSize, DifferenceFunction.INCREMENTAL, threshold, null, kernels);
+					for(int run = 0; run < 50; run++) {
+						float[] samples = randomTone(random, 28 + random.nextInt(80), bufferSize);
+						assertEquals(kernels + " " + bufferSize + " " + threshold + " run " + run,
+								direct.detect(samples, SAMPLE_RATE), incremental.detect(samples, SAMPLE_RATE));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void boundedIncrementalMatchesDirectInRange() {
+		int    minKey   = 40;
+		int    maxKey   = 84;
+		Random random   = new Random(6);
+		int    compared = 0;
+		int    runs     = 0;
+		for(YinKernels kernels : KERNELS) {
+			for(int bufferSize : BUFFER_SIZES) {
+				for(double threshold : THRESHOLDS) {
+					YinPitchDetection direct      = new YinPitchDetection(bufferSize, DifferenceFunction.DIRECT, threshold, null, kernels);
+					YinPitchDetection incremental = new YinPitchDetection(bufferSize, DifferenceFunction.INCREMENTAL, threshold, null, kernels);
+					incremental.setFrequencyRange(MidiNoteUtils.getMidiNote(minKey).getFrequency(), MidiNoteUtils.getMidiNote(maxKey).getFrequency());
+					for(int run = 0; run < 50; run++, runs++) {
+						float[] samples  = randomTone(random, 28 + random.nextInt(80), bufferSize);
+						int     expected = direct.detect(samples, SAMPLE_RATE);
+						int     actual   = incremental.detect(samples, SAMPLE_RATE);
+						// a semitone of margin, so the lag after the dip is inside the range too
+						int     key      = PitchDetectionResult.getMidiKey(expected);
+						if(!PitchDetectionResult.isPitched(expected) || key <= minKey || key >= maxKey)
+							continue;
+						assertEquals(kernels + " " + bufferSize + " " + threshold + " run " + run, expected, actual);
+						compared++;
+					}
+				}
+			}
+		}
+		assertTrue("only " + compared + " of " + runs + " detections in range", compared > runs / 4);
+	}
+
+	@Test
+	public void steadyStateDetectionDoesNotAllocate() {
+		com.sun.management.ThreadMXBean threads = threadMXBean();
+		long                             thread  = Thread.currentThread().getId();
+		float[][]                        signals = {tone(57, 2048), tone(81, 2048), new float[2048]};
+		for(DifferenceFunction df : DifferenceFunction.values()) {
+			YinPitchDetection yin = new YinPitchDetection(YinPitchDetection.AUDIO_BUFFER_SIZE, df);
+			int               check = 0;
+			for(int i = 0; i < WARMUP; i++)
+				check += yin.detect(signals[i % signals.length], SAMPLE_RATE);
+			long before = threads.getThreadAllocatedBytes(thread);
+			for(int i = 0; i < DETECTIONS; i++)
+				check += yin.detect(signals[i % signals.length], SAMPLE_RATE);
+			long allocated = threads.getThreadAllocatedBytes(thread) - before;
+			// the measurement itself may allocate a few bytes, a detection allocating anything shows up per call
+			assertTrue(df + " allocated " + allocated + " bytes (" + check + ")", allocated < DETECTIONS);
+		}
+	}
+
+	private static com.sun.management.ThreadMXBean threadMXBean() {
+		assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean result = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		assumeTrue(result.isThreadAllocatedMemorySupported());
+		result.setThreadAllocatedMemoryEnabled(true);
+		return result;
+	}
+
+	static float[] tone(int key, int length) {
+		float[] result    = new float[length];
+		double  frequency = 440 * Math.pow(2, (key - 69) / 12.0);
+		for(int i = 0; i < length; i++)
+			result[i] = (float)(0.8 * Math.sin(2 * Math.PI * frequency * i / SAMPLE_RATE));
+		return result;
+	}
+
+	// a detuned note with random phase, two overtones and a little noise
+	private static float[] randomTone(Random random, int key, int length) {
+		float[] result    = new float[length];
+		double  frequency = 440 * Math.pow(2, (key - 69 + random.nextDouble() - 0.5) / 12.0);
+		double  phase     = random.nextDouble() * 2 * Math.PI;
+		double  second    = random.nextDouble() * 0.4;
+		double  third     = random.nextDouble() * 0.2;
+		for(int i = 0; i < length; i++) {
+			double angle = 2 * Math.PI * frequency * i / SAMPLE_RATE + phase;
+			result[i] = (float)(0.5 * Math.sin(angle) + second * Math.sin(2 * angle) + third * Math.sin(3 * angle) + 0.01 * random.nextGaussian());
+		}
+		return result;
+	}
+}
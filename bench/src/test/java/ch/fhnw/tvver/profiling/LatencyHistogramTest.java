@@ -0,0 +1,116 @@
+package ch.fhnw.tvver.profiling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+	private static final int      VALUES      = 100000;
+	private static final double   MAX_ERROR   = 1.0 / 8;
+	private static final double[] PERCENTILES = {0, 0.1, 1, 25, 50, 90, 99, 99.9, 100};
+
+	@Test
+	public void bucketsCoverTheLongRange() {
+		int n = LatencyHistogram.getNumBuckets();
+		assertEquals(0, LatencyHistogram.getBucketLowerBound(0));
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.getBucketUpperBound(n - 1));
+		for(int i = 0; i < n; i++) {
+			long lower = LatencyHistogram.getBucketLowerBound(i);
+			long upper = LatencyHistogram.getBucketUpperBound(i);
+			assertTrue("bucket " + i, lower <= upper);
+			assertEquals("lower bound of bucket " + i, i, LatencyHistogram.index(lower));
+			assertEquals("upper bound of bucket " + i, i, LatencyHistogram.index(upper));
+			if(i + 1 < n)
+				assertEquals("gap after bucket " + i, upper + 1, LatencyHistogram.getBucketLowerBound(i + 1));
+			// a bucket is never wider than an eighth of its lower bound
+			assertTrue("width of bucket " + i, upper - lower <= Math.max(0, lower / 8));
+		}
+	}
+
+	@Test
+	public void smallValuesAndPowersOfTwo() {
+		for(int v = 0; v < 8; v++) {
+			assertEquals(v, LatencyHistogram.index(v));
+			assertEquals(v, LatencyHistogram.getBucketUpperBound(v));
+		}
+		for(int exp = 3; exp < 63; exp++) {
+			int i = LatencyHistogram.index(1L << exp);
+			assertEquals(1L << exp, LatencyHistogram.getBucketLowerBound(i));
+			assertEquals((1L << exp) - 1, LatencyHistogram.getBucketUpperBound(i - 1));
+		}
+		assertEquals(LatencyHistogram.getNumBuckets() - 1, LatencyHistogram.index(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void percentilesMatchSortedValues() {
+		Random           random    = new Random(16);
+		long[]           values    = new long[VALUES];
+		LatencyHistogram histogram = new LatencyHistogram();
+		long             sum       = 0;
+		for(int i = 0; i < VALUES; i++) {
+			// log uniform between 1 ns and 10 ms
+			values[i] = (long)Math.pow(10, random.nextDouble() * 7);
+			histogram.record(values[i]);
+			sum += values[i];
+		}
+		Arrays.sort(values);
+		assertEquals(VALUES, histogram.getCount());
+		assertEquals(values[VALUES - 1], histogram.getMax());
+		assertEquals(sum / (double)VALUES, histogram.getMean(), 1E-6);
+		for(double p : PERCENTILES) {
+			long exact  = values[Math.max(0, (int)Math.ceil(p / 100 * VALUES) - 1)];
+			long actual = histogram.getPercentile(p);
+			assertTrue("p" + p + ": " + actual + " < " + exact, actual >= exact);
+			assertTrue("p" + p + ": " + actual + " vs " + exact, actual <= exact + exact * MAX_ERROR);
+		}
+		assertEquals(values[VALUES - 1], histogram.getPercentile(100));
+	}
+
+	@Test
+	public void mergeEqualsSingleHistogram() {
+		Random           random = new Random(17);
+		LatencyHistogram all    = new LatencyHistogram();
+		LatencyHistogram first  = new LatencyHistogram();
+		LatencyHistogram second = new LatencyHistogram();
+		for(int i = 0; i < VALUES; i++) {
+			long value = (long)(random.nextGaussian() * 1E5 + 1E6);
+			all.record(value);
+			(i % 3 == 0 ? first : second).record(value);
+		}
+		LatencyHistogram merged = first.snapshot();
+		merged.add(second);
+		assertEquals(all.getCount(), merged.getCount());
+		assertEquals(all.getMax(), merged.getMax());
+		assertEquals(all.getMean(), merged.getMean(), 1E-9);
+		for(int i = 0; i < LatencyHistogram.getNumBuckets(); i++)
+			assertEquals("bucket " + i, all.getBucketCount(i), merged.getBucketCount(i));
+		for(double p : PERCENTILES)
+			assertEquals("p" + p, all.getPercentile(p), merged.getPercentile(p));
+
+		// the snapshot does not see later values
+		long count = merged.getCount();
+		LatencyHistogram copy = merged.snapshot();
+		merged.record(Long.MAX_VALUE);
+		assertEquals(count, copy.getCount());
+		assertEquals(all.getMax(), copy.getMax());
+	}
+
+	@Test
+	public void emptyAndNegative() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentile(50));
+		assertEquals(0, histogram.getMean(), 0);
+		histogram.record(-5);
+		assertEquals(1, histogram.getCount());
+		assertEquals(1, histogram.getBucketCount(0));
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getPercentile(100));
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getBucketCount(0));
+	}
+}
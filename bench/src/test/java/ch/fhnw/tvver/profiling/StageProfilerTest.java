@@ -0,0 +1,70 @@
+package ch.fhnw.tvver.profiling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.fhnw.ether.audio.IAudioRenderTarget;
+import ch.fhnw.ether.media.AbstractRenderCommand;
+import ch.fhnw.ether.media.RenderCommandException;
+import ch.fhnw.ether.media.RenderProgram;
+import ch.fhnw.tvver.audio.RawPCMAudioSource;
+
+public class StageProfilerTest {
+	@Test
+	public void disabledAddsNoProbes() {
+		StageProfiler    profiler = new StageProfiler(false);
+		RecordingProgram program  = new RecordingProgram();
+		Stage            a        = new Stage();
+		Stage            b        = new Stage();
+		profiler.begin(program);
+		profiler.addLast(program, a);
+		profiler.addLast(program, b);
+		profiler.end(program);
+		assertEquals(Arrays.asList(a, b), program.commands);
+		assertTrue(profiler.snapshot().isEmpty());
+	}
+
+	@Test
+	public void enabledProbesEveryStage() {
+		StageProfiler    profiler = new StageProfiler(true);
+		RecordingProgram program  = new RecordingProgram();
+		Stage            a        = new Stage();
+		Stage            b        = new Stage();
+		profiler.begin(program);
+		profiler.addLast(program, a);
+		profiler.addLast(program, b);
+		profiler.end(program);
+		// begin probe, a, probe, b, probe, end probe
+		assertEquals(6, program.commands.size());
+		assertSame(a, program.commands.get(1));
+		assertSame(b, program.commands.get(3));
+		assertEquals(Arrays.asList("Stage", "Stage#2"), new ArrayList<>(profiler.snapshot().keySet()));
+	}
+
+	static final class Stage extends AbstractRenderCommand<IAudioRenderTarget> {
+		@Override
+		protected void run(IAudioRenderTarget target) throws RenderCommandException {}
+	}
+
+	static final class RecordingProgram extends RenderProgram<IAudioRenderTarget> {
+		final List<AbstractRenderCommand<IAudioRenderTarget>> commands = new ArrayList<>();
+
+		RecordingProgram() {
+			super(new RawPCMAudioSource(Channels.newChannel(new ByteArrayInputStream(new byte[0])), 44100, 1, 16, 1024));
+		}
+
+		@Override
+		public void addLast(AbstractRenderCommand<IAudioRenderTarget> cmd) {
+			commands.add(cmd);
+		}
+	}
+}
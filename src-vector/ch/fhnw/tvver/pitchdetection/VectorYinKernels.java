@@ -0,0 +1,99 @@
+package ch.fhnw.tvver.pitchdetection;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link YinKernels} with the SIMD instructions of the platform through
+ * <code>jdk.incubator.vector</code>. The difference function and the band
+ * sums accumulate one partial sum per lane, the threshold scan compares a
+ * whole vector at once. The cumulative mean normalization is a running sum
+ * where every value depends on the previous one, it stays scalar.<br>
+ * <br>
+ * Needs JDK 16 or later, it is loaded through {@link YinKernels#vector()}.
+ */
+final class VectorYinKernels extends YinKernels {
+
+	private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+	VectorYinKernels() {
+		// fails here rather than on the render thread if the module is missing
+		FloatVector.zero(SPECIES);
+	}
+
+	@Override
+	public String toString() {
+		return "vector";
+	}
+
+	@Override
+	public void difference(float[] audioBuffer, float[] resultBuffer) {
+		int length = resultBuffer.length;
+		if (length > 0) {
+			resultBuffer[0] = 0;
+		}
+		int bound = SPECIES.loopBound(length);
+		for (int offset = 1; offset < length; offset++) {
+			FloatVector sums = FloatVector.zero(SPECIES);
+			int index = 0;
+			for (; index < bound; index += SPECIES.length()) {
+				FloatVector delta = FloatVector.fromArray(SPECIES, audioBuffer, index)
+						.sub(FloatVector.fromArray(SPECIES, audioBuffer, index + offset));
+				sums = delta.fma(delta, sums);
+			}
+			float sum = sums.reduceLanes(VectorOperators.ADD);
+			for (; index < length; index++) {
+				float delta = audioBuffer[index] - audioBuffer[index + offset];
+				sum += delta * delta;
+			}
+			resultBuffer[offset] = sum;
+		}
+	}
+
+	@Override
+	public void cumulativeMeanNormalization(float[] resultBuffer) {
+		SCALAR.cumulativeMeanNormalization(resultBuffer);
+	}
+
+	@Override
+	public int firstBelow(float[] resultBuffer, int from, double threshold) {
+		// the largest float below the threshold, so the float comparison
+		// decides like the double one of the other kernels
+		float below = (float) threshold;
+		if (below >= threshold) {
+			below = Math.nextDown(below);
+		}
+		int length = resultBuffer.length;
+		int index = from;
+		int bound = from + SPECIES.loopBound(Math.max(0, length - from));
+		for (; index < bound; index += SPECIES.length()) {
+			VectorMask<Float> mask = FloatVector.fromArray(SPECIES, resultBuffer, index).compare(VectorOperators.LE, below);
+			if (mask.anyTrue()) {
+				return index + mask.firstTrue();
+			}
+		}
+		for (; index < length; index++) {
+			if (resultBuffer[index] <= below) {
+				break;
+			}
+		}
+		return index;
+	}
+
+	@Override
+	public double sum(float[] values, int from, int to) {
+		FloatVector sums = FloatVector.zero(SPECIES);
+		int index = from;
+		int bound = from + SPECIES.loopBound(Math.max(0, to - from));
+		for (; index < bound; index += SPECIES.length()) {
+			sums = sums.add(FloatVector.fromArray(SPECIES, values, index));
+		}
+		double sum = sums.reduceLanes(VectorOperators.ADD);
+		for (; index < to; index++) {
+			sum += values[index];
+		}
+		return sum;
+	}
+}
@@ -11,11 +11,14 @@ import javax.sound.midi.MidiUnavailableException;
 import javax.sound.sampled.UnsupportedAudioFileException;
 
 import ch.fhnw.ether.audio.IAudioRenderTarget;
+import ch.fhnw.ether.audio.IAudioSource;
+import ch.fhnw.ether.media.AbstractFrameSource;
 import ch.fhnw.ether.media.RenderCommandException;
 import ch.fhnw.ether.media.RenderProgram;
+import ch.fhnw.tvver.profiling.StageProfiler;
 
 public abstract class AbstractPCM2MIDI {
-	enum Flags {SYNTH, WAVE, REPORT, DEBUG, MAX_SPEED, DUMP_MIDI}
+	enum Flags {SYNTH, WAVE, REPORT, DEBUG, MAX_SPEED, DUMP_MIDI, PCM_CACHE, RECORD_MIDI, PROFILE}
 
 	private final PCM2MIDIShell p2ms;
 	private       Throwable     exception;
@@ -33,11 +36,12 @@ public abstract class AbstractPCM2MIDI {
 	 * @throws InvalidMidiDataException 
 	 */
 	protected void noteOff(int key, int velocity) {
-		p2ms.noteOn(key, 0);
+		p2ms.noteOff(key);
 	}
 
 	/**
-	 * Callback to initialize analysis pipeline. Add your render commands to <code>program</code>.
+	 * Callback to initialize analysis pipeline. Add your render commands to <code>program</code>,
+	 * commands added through {@link #getProfiler()} are included in the latency profile.
 	 * 
 	 * @param program The program which will be run for analysis.
 	 */
@@ -63,6 +67,26 @@ public abstract class AbstractPCM2MIDI {
 		p2ms = new PCM2MIDIShell(track, flags);
 	}
 
+	/**
+	 * Create a PCM2MIDI instance analysing a live source, there are no reference notes.
+	 * 
+	 * @param name Names the session.
+	 * @param source The source to read samples from, e.g. a {@link ch.fhnw.tvver.audio.RawPCMAudioSource}.
+	 * @param flags Control output.
+	 */
+	protected <S extends AbstractFrameSource & IAudioSource> AbstractPCM2MIDI(String name, S source, EnumSet<Flags> flags) throws IOException, InvalidMidiDataException {
+		p2ms = new PCM2MIDIShell(name, source, flags);
+	}
+
+	/**
+	 * Returns the profiler of the analysis pipeline. It records per frame execution times of
+	 * the commands added with {@link StageProfiler#addLast(RenderProgram, ch.fhnw.ether.media.AbstractRenderCommand)}
+	 * if {@link Flags#PROFILE} is set and just adds them otherwise.
+	 */
+	protected final StageProfiler getProfiler() {
+		return p2ms.getProfiler();
+	}
+
 	//--- for testing
 
 	protected final int[] getVelocities() {
@@ -111,4 +135,8 @@ public abstract class AbstractPCM2MIDI {
 			throw new IOException(t);
 		}
 	}	
+
+	final void writeMIDI(File file) throws IOException {
+		p2ms.writeMIDI(file);
+	}
 }
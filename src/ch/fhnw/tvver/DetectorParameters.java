@@ -0,0 +1,207 @@
+package ch.fhnw.tvver;
+
+import java.util.Arrays;
+
+import ch.fhnw.tvver.onsetdetection.OnSetDetection;
+import ch.fhnw.tvver.onsetdetection.OnSetDetection.ThresholdMode;
+import ch.fhnw.tvver.pitchdetection.YinPitchDetection;
+import ch.fhnw.tvver.pitchdetection.YinPitchDetection.DifferenceFunction;
+
+/**
+ * The tunable constants of {@link PCM2MidConverter}. Instances are immutable,
+ * the <code>with</code> methods return modified copies starting from {@link #DEFAULT}.
+ */
+public final class DetectorParameters {
+	/** The lowest frequency resolved by the FFT, just below A0 of the sub contra octave. */
+	public static final float A_SUB_CONTRA_OCTAVE_FREQ = 25.5f;
+
+	/** The values {@link PCM2MidConverter} was tuned with. */
+	public static final DetectorParameters DEFAULT = new DetectorParameters(
+			A_SUB_CONTRA_OCTAVE_FREQ,
+			YinPitchDetection.THRESHOLD,
+			YinPitchDetection.AUDIO_BUFFER_SIZE,
+			DifferenceFunction.DIRECT,
+			OnSetDetection.bands,
+			OnSetDetection.FLUX_THRESHOLD,
+			OnSetDetection.MIN_FLUX,
+			OnSetDetection.ENERGY_RISE,
+			ThresholdMode.MEAN,
+			OnSetDetection.THRESHOLD_FRAMES,
+			0);
+
+	private final float              minFrequency;
+	private final double             yinThreshold;
+	private final int                yinBufferSize;
+	private final DifferenceFunction differenceFunction;
+	private final float[]            bands;
+	private final float              fluxThreshold;
+	private final float              minFlux;
+	private final double             energyRise;
+	private final ThresholdMode      thresholdMode;
+	private final int                thresholdFrames;
+	private final float              maxFrequency;
+
+	private DetectorParameters(float minFrequency, double yinThreshold, int yinBufferSize, DifferenceFunction differenceFunction, 
+			float[] bands, float fluxThreshold, float minFlux, double energyRise, ThresholdMode thresholdMode, int thresholdFrames, float maxFrequency) {
+		if(bands.length < 2 || bands.length % 2 != 0)
+			throw new IllegalArgumentException("Bands must be pairs of lower and upper frequency: " + Arrays.toString(bands));
+		this.minFrequency       = minFrequency;
+		this.yinThreshold       = yinThreshold;
+		this.yinBufferSize      = yinBufferSize;
+		this.differenceFunction = differenceFunction;
+		this.bands              = bands.clone();
+		this.fluxThreshold      = fluxThreshold;
+		this.minFlux            = minFlux;
+		this.energyRise         = energyRise;
+		this.thresholdMode      = thresholdMode;
+		this.thresholdFrames    = thresholdFrames;
+		this.maxFrequency       = maxFrequency;
+	}
+
+	/** @return The lowest frequency resolved by the FFT in Hz. */
+	public float getMinFrequency() {
+		return minFrequency;
+	}
+
+	/** @return The absolute threshold of the Yin algorithm. */
+	public double getYinThreshold() {
+		return yinThreshold;
+	}
+
+	/** @return The number of samples analysed by the Yin algorithm, at the decimated rate if {@link #getMaxFrequency()} is set. */
+	public int getYinBufferSize() {
+		return yinBufferSize;
+	}
+
+	public DifferenceFunction getDifferenceFunction() {
+		return differenceFunction;
+	}
+
+	/** @return Pairs of lower and upper frequency of the onset detection bands. */
+	public float[] getBands() {
+		return bands.clone();
+	}
+
+	/** @return The flux above the mean of the first band required if all other bands are silent. */
+	public float getFluxThreshold() {
+		return fluxThreshold;
+	}
+
+	/** @return The flux of the first band below which a frame is ignored. */
+	public float getMinFlux() {
+		return minFlux;
+	}
+
+	/** @return The energy increase from the previous frame required for an onset. */
+	public double getEnergyRise() {
+		return energyRise;
+	}
+
+	/** @return How the onset threshold is derived from the recent flux. */
+	public ThresholdMode getThresholdMode() {
+		return thresholdMode;
+	}
+
+	/** @return The number of previous frames the onset threshold is taken over. */
+	public int getThresholdFrames() {
+		return thresholdFrames;
+	}
+
+	/** @return The highest frequency the pitch detection has to see in Hz, 0 to analyse at full rate without decimation. */
+	public float getMaxFrequency() {
+		return maxFrequency;
+	}
+
+	public DetectorParameters withMinFrequency(float minFrequency) {
+		return new DetectorParameters(minFrequency, yinThreshold, yinBufferSize, differenceFunction, bands, fluxThreshold, minFlux, energyRise, thresholdMode, thresholdFrames, maxFrequency);
+	}
+
+	public DetectorParameters withYinThreshold(double yinThreshold) {
+		return new DetectorParameters(minFrequency, yinThreshold, yinBufferSize, differenceFunction, bands, fluxThreshold, minFlux, energyRise, thresholdMode, thresholdFrames, maxFrequency);
+	}
+
+	public DetectorParameters withYinBufferSize(int yinBufferSize) {
+		return new DetectorParameters(minFrequency, yinThreshold, yinBufferSize, differenceFunction, bands, fluxThreshold, minFlux, energyRise, thresholdMode, thresholdFrames, maxFrequency);
+	}
+
+	public DetectorParameters withDifferenceFunction(DifferenceFunction differenceFunction) {
+		return new DetectorParameters(minFrequency, yinThreshold, yinBufferSize, differenceFunction, bands, fluxThreshold, minFlux, energyRise, thresholdMode, thresholdFrames, maxFrequency);
+	}
+
+	public DetectorParameters withBands(float... bands) {
+		return new DetectorParameters(minFrequency, yinThreshold, yinBufferSize, differenceFunction, bands, fluxThreshold, minFlux, energyRise, thresholdMode, thresholdFrames, maxFrequency);
+	}
+
+	public DetectorParameters withFluxThreshold(float fluxThreshold) {
+		return new DetectorParameters(minFrequency, yinThreshold, yinBufferSize, differenceFunction, bands, fluxThreshold, minFlux, energyRise, thresholdMode, thresholdFrames, maxFrequency);
+	}
+
+	public DetectorParameters withMinFlux(float minFlux) {
+		return new DetectorParameters(minFrequency, yinThreshold, yinBufferSize, differenceFunction, bands, fluxThreshold, minFlux, energyRise, thresholdMode, thresholdFrames, maxFrequency);
+	}
+
+	public DetectorParameters withEnergyRise(double energyRise) {
+		return new DetectorParameters(minFrequency, yinThreshold, yinBufferSize, differenceFunction, bands, fluxThreshold, minFlux, energyRise, thresholdMode, thresholdFrames, maxFrequency);
+	}
+
+	public DetectorParameters withThresholdMode(ThresholdMode thresholdMode) {
+		return new DetectorParameters(minFrequency, yinThreshold, yinBufferSize, differenceFunction, bands, fluxThreshold, minFlux, energyRise, thresholdMode, thresholdFrames, maxFrequency);
+	}
+
+	public DetectorParameters withThresholdFrames(int thresholdFrames) {
+		return new DetectorParameters(minFrequency, yinThreshold, yinBufferSize, differenceFunction, bands, fluxThreshold, minFlux, energyRise, thresholdMode, thresholdFrames, maxFrequency);
+	}
+
+	public DetectorParameters withMaxFrequency(float maxFrequency) {
+		return new DetectorParameters(minFrequency, yinThreshold, yinBufferSize, differenceFunction, bands, fluxThreshold, minFlux, energyRise, thresholdMode, thresholdFrames, maxFrequency);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if(this == obj) return true;
+		if(!(obj instanceof DetectorParameters)) return false;
+		DetectorParameters other = (DetectorParameters)obj;
+		return minFrequency == other.minFrequency &&
+				yinThreshold == other.yinThreshold &&
+				yinBufferSize == other.yinBufferSize &&
+				differenceFunction == other.differenceFunction &&
+				Arrays.equals(bands, other.bands) &&
+				fluxThreshold == other.fluxThreshold &&
+				minFlux == other.minFlux &&
+				energyRise == other.energyRise &&
+				thresholdMode == other.thresholdMode &&
+				thresholdFrames == other.thresholdFrames &&
+				maxFrequency == other.maxFrequency;
+	}
+
+	@Override
+	public int hashCode() {
+		int result = Float.hashCode(minFrequency);
+		result = 31 * result + Double.hashCode(yinThreshold);
+		result = 31 * result + yinBufferSize;
+		result = 31 * result + differenceFunction.hashCode();
+		result = 31 * result + Arrays.hashCode(bands);
+		result = 31 * result + Float.hashCode(fluxThreshold);
+		result = 31 * result + Float.hashCode(minFlux);
+		result = 31 * result + Double.hashCode(energyRise);
+		result = 31 * result + thresholdMode.hashCode();
+		result = 31 * result + thresholdFrames;
+		result = 31 * result + Float.hashCode(maxFrequency);
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "minFrequency=" + minFrequency + 
+				" yinThreshold=" + yinThreshold + 
+				" yinBufferSize=" + yinBufferSize + 
+				" differenceFunction=" + differenceFunction + 
+				" bands=" + Arrays.toString(bands) + 
+				" fluxThreshold=" + fluxThreshold + 
+				" minFlux=" + minFlux + 
+				" energyRise=" + energyRise + 
+				" thresholdMode=" + thresholdMode + 
+				" thresholdFrames=" + thresholdFrames + 
+				" maxFrequency=" + maxFrequency;
+	}
+}
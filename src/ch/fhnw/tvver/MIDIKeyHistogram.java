@@ -1,63 +1,104 @@
 package ch.fhnw.tvver;
 
 import java.io.File;
-import java.io.IOException;
-import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import javax.sound.midi.InvalidMidiDataException;
-import javax.sound.midi.MidiMessage;
-import javax.sound.midi.MidiUnavailableException;
 import javax.sound.midi.ShortMessage;
 
-import ch.fhnw.ether.media.AbstractRenderCommand;
-import ch.fhnw.ether.media.IScheduler;
-import ch.fhnw.ether.media.RenderCommandException;
-import ch.fhnw.ether.media.RenderProgram;
-import ch.fhnw.ether.midi.IMidiRenderTarget;
-import ch.fhnw.ether.midi.MidiFrame;
-import ch.fhnw.ether.midi.NullMidiTarget;
-import ch.fhnw.ether.midi.URLMidiSource;
+import ch.fhnw.tvver.midi.SMFReader;
+import ch.fhnw.util.Log;
 
+/**
+ * Counts the NOTE_ON events per MIDI key of all MIDI files below a directory.
+ * Files are parsed directly with {@link SMFReader} by a pool of workers, each
+ * with its own counters which are summed up at the end. Files that cannot be
+ * parsed are logged and skipped, none of their events are counted.
+ */
 public class MIDIKeyHistogram {
-	static int[] keys = new int[128];
+	private static final Log log = Log.create();
 
 	private static final String[] EXCLUDE = {"scale.mid"};
 
-	public static void main(String[] args) throws MalformedURLException, InvalidMidiDataException, IOException, MidiUnavailableException, RenderCommandException {
-		scan(new File(args[0]));
+	public static void main(String[] args) throws InterruptedException {
+		int   parallelism = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		int[] keys        = scan(new File(args[0]), parallelism);
 
 		for(int i = 0; i < keys.length; i++)
 			System.out.println(i + "\t" + keys[i]);
 	}
 
-	private static void scan(File file) throws MalformedURLException, InvalidMidiDataException, IOException, MidiUnavailableException, RenderCommandException {
+	/**
+	 * @return The number of NOTE_ON events per key, including those with velocity 0.
+	 */
+	public static int[] scan(File root, int parallelism) throws InterruptedException {
+		List<File> files = new ArrayList<>();
+		collect(root, files);
+
+		AtomicInteger   next    = new AtomicInteger();
+		List<int[]>     counts  = new ArrayList<>();
+		List<Future<?>> futures = new ArrayList<>();
+		int             threads = Math.max(1, Math.min(parallelism, files.size()));
+		ExecutorService workers = Executors.newFixedThreadPool(threads);
+		try {
+			for(int i = 0; i < threads; i++) {
+				int[] keys = new int[128];
+				counts.add(keys);
+				futures.add(workers.submit(() -> {
+					// a file that fails half way must not leave its first notes behind
+					int[]             file    = new int[128];
+					SMFReader.Handler handler = (track, tick, status, data1, data2) -> {
+						if((status & 0xF0) == ShortMessage.NOTE_ON)
+							file[data1]++;
+					};
+					for(int idx; (idx = next.getAndIncrement()) < files.size(); ) {
+						Arrays.fill(file, 0);
+						try {
+							SMFReader.read(files.get(idx), handler);
+						} catch(Throwable t) {
+							log.warning(t);
+							continue;
+						}
+						for(int key = 0; key < keys.length; key++)
+							keys[key] += file[key];
+					}
+				}));
+			}
+			for(Future<?> future : futures) {
+				try {
+					future.get();
+				} catch(Throwable t) {
+					if(t instanceof InterruptedException) throw (InterruptedException)t;
+					log.warning(t);
+				}
+			}
+		} finally {
+			workers.shutdown();
+		}
+
+		int[] result = new int[128];
+		for(int[] keys : counts)
+			for(int i = 0; i < result.length; i++)
+				result[i] += keys[i];
+		return result;
+	}
+
+	private static void collect(File file, List<File> result) {
 		if(file.isDirectory()) {
-			for(File f : file.listFiles())
-				scan(f);
-		} else if(file.isFile() && file.getName().endsWith(".mid")) {
+			File[] children = file.listFiles();
+			if(children != null)
+				for(File f : children)
+					collect(f, result);
+		} else if(file.isFile() && file.getName().endsWith(".mid") && !(file.getName().endsWith(PCM2MIDIShell.DETECTED_MIDI_SUFFIX))) {
 			for(String excl : EXCLUDE)
 				if(file.getName().equals(excl))
 					return;
-			URLMidiSource src = new URLMidiSource(file.toURI().toURL(), 1);
-			RenderProgram<IMidiRenderTarget> program = new RenderProgram<IMidiRenderTarget>(src, new AbstractRenderCommand<IMidiRenderTarget>() {
-				@Override
-				protected void run(IMidiRenderTarget target) throws RenderCommandException {
-					MidiFrame frame = target.getFrame();
-					for(MidiMessage m : frame.messages) {
-						if(m instanceof ShortMessage) {
-							ShortMessage sm = (ShortMessage)m;
-							if(sm.getCommand() == ShortMessage.NOTE_ON) {
-								keys[sm.getData1()]++;
-							}
-						}
-					}
-				}
-			});
-			NullMidiTarget out = new NullMidiTarget(false);
-			out.useProgram(program);
-			out.start();
-			out.sleepUntil(IScheduler.NOT_RENDERING);
-			out.stop();
+			result.add(file);
 		}
 	}
 }
@@ -1,11 +1,10 @@
 package ch.fhnw.tvver;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
 import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
 import javax.sound.midi.ShortMessage;
 
 import ch.fhnw.ether.audio.IAudioRenderTarget;
@@ -17,49 +16,56 @@ import ch.fhnw.util.color.RGB;
 
 public class MidiKeyTracker extends AbstractRenderCommand<IAudioRenderTarget> implements IPlotable {
 	private final int[] velocities = new int[128];
-	private final List<List<MidiEvent>> midiRef = new ArrayList<>(1024*104);
-	private       int                   msTime;
+	// millisecond time of the last reference note on per key
+	private final long[] onsets    = new long[128];
+	// reference note events sorted by time: millisecond timestamps and packed command | key << 8 | velocity << 16
+	private       long[]                refTimes  = new long[0];
+	private       int[]                 refEvents = new int[0];
+	private       int                   refCount;
+	private       int                   cursor;
 	private       SortedSet<MidiEvent>  refMidi = new TreeSet<>();
 	
 	@Override
 	protected void init(IAudioRenderTarget target) throws RenderCommandException {
 		super.init(target);
-		midiRef.clear();
+		refTimes  = new long[refMidi.size()];
+		refEvents = new int[refMidi.size()];
+		refCount  = 0;
+		cursor    = 0;
 		for(MidiEvent e : refMidi) {
-			int msTime = (int) (e.getTick() / 1000L);
-			while(midiRef.size() <= msTime)
-				midiRef.add(null);
-			List<MidiEvent> evts = midiRef.get(msTime);
-			if(evts == null) {
-				evts = new ArrayList<MidiEvent>();
-				midiRef.set(msTime, evts);
+			MidiMessage msg = e.getMessage();
+			if(!(msg instanceof ShortMessage)) continue;
+			ShortMessage sm = (ShortMessage)msg;
+			if(sm.getCommand() != ShortMessage.NOTE_ON && sm.getCommand() != ShortMessage.NOTE_OFF) continue;
+			long msTime = e.getTick() / 1000L;
+			int  event  = sm.getCommand() | sm.getData1() << 8 | sm.getData2() << 16;
+			// keep events of the same millisecond in set order
+			int  idx    = refCount++;
+			for(; idx > 0 && refTimes[idx - 1] > msTime; idx--) {
+				refTimes[idx]  = refTimes[idx - 1];
+				refEvents[idx] = refEvents[idx - 1];
 			}
-			evts.add(e);
+			refTimes[idx]  = msTime;
+			refEvents[idx] = event;
 		}
 	}
 	
 	@Override
 	protected void run(IAudioRenderTarget target) throws RenderCommandException {
 		try {
-			int msTimeLimit = (int) (target.getFrame().playOutTime * IScheduler.SEC2MS);
-			for(;msTime <= msTimeLimit; msTime++) {
-				if(msTime < midiRef.size()) {
-					List<MidiEvent> evts = midiRef.get(msTime);
-					if(evts != null) {
-						for(MidiEvent e : evts) {
-							if(e.getMessage() instanceof ShortMessage) {
-								ShortMessage sm = (ShortMessage)e.getMessage();
-								switch(sm.getCommand()) {
-								case ShortMessage.NOTE_ON:
-									setVelocity(sm.getData1(), sm.getData2());
-									break;
-								case ShortMessage.NOTE_OFF:
-									setVelocity(sm.getData1(), 0);
-									break;
-								}
-							}
-						}
-					}
+			long msTimeLimit = (long) (target.getFrame().playOutTime * IScheduler.SEC2MS);
+			for(;cursor < refCount && refTimes[cursor] <= msTimeLimit; cursor++) {
+				int event = refEvents[cursor];
+				int key   = (event >> 8) & 0x7F;
+				switch(event & 0xF0) {
+				case ShortMessage.NOTE_ON:
+					if(((event >> 16) & 0x7F) != 0)
+						onsets[key] = refTimes[cursor];
+					setVelocity(key, (event >> 16) & 0x7F);
+					break;
+				case ShortMessage.NOTE_OFF:
+					setVelocity(key, 0);
+					break;
 				}
 			}
 			clear();
@@ -77,6 +83,13 @@ public class MidiKeyTracker extends AbstractRenderCommand<IAudioRenderTarget> im
 		return velocities;
 	}
 
+	/**
+	 * @return The time of the last reference note on of <code>key</code> in milliseconds.
+	 */
+	public long getOnsetTime(int key) {
+		return onsets[key];
+	}
+
 	public void setRefMidi(SortedSet<MidiEvent> refMidi) {
 		this.refMidi = refMidi;
 	}
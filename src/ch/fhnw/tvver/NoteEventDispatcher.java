@@ -0,0 +1,96 @@
+package ch.fhnw.tvver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import ch.fhnw.util.Log;
+
+/**
+ * Moves note events off the render thread. The render thread publishes into
+ * a {@link NoteEventRing}, a daemon thread drains it and calls the
+ * registered {@link NoteListener}s. Exceptions of a listener are logged and
+ * do not affect other listeners.
+ */
+final class NoteEventDispatcher {
+	private static final Log  log        = Log.create();
+	private static final int  CAPACITY   = 4096;
+	private static final int  BATCH      = 256;
+	private static final long IDLE_NANOS = 200000;
+
+	private final NoteEventRing      ring      = new NoteEventRing(CAPACITY);
+	private final List<NoteListener> listeners = new ArrayList<>();
+	private final String             name;
+	private       NoteListener[]     targets;
+	private       Thread             thread;
+	private volatile boolean         running;
+
+	private final NoteListener dispatch = (time, key, velocity, kind) -> {
+		for(NoteListener listener : targets) {
+			try {
+				listener.note(time, key, velocity, kind);
+			} catch(Throwable t) {
+				log.warning(t);
+			}
+		}
+	};
+
+	NoteEventDispatcher(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Registers a listener, only possible before {@link #start()}.
+	 */
+	void addListener(NoteListener listener) {
+		if(thread != null)
+			throw new IllegalStateException("Dispatcher already started");
+		listeners.add(listener);
+	}
+
+	synchronized void start() {
+		if(thread != null) return;
+		targets = listeners.toArray(new NoteListener[listeners.size()]);
+		running = true;
+		thread  = new Thread(this::run, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Publishes an event, called on the render thread.
+	 */
+	void publish(long time, int key, int velocity, int kind) {
+		ring.publish(time, key, velocity, kind);
+	}
+
+	/**
+	 * Waits until all events published so far have been delivered.
+	 */
+	void flush() {
+		long target = ring.getPublished();
+		while(thread != null && thread.isAlive() && ring.getConsumed() < target) {
+			LockSupport.unpark(thread);
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * Delivers all pending events and stops the dispatcher thread.
+	 */
+	synchronized void close() throws InterruptedException {
+		if(thread == null) return;
+		flush();
+		running = false;
+		LockSupport.unpark(thread);
+		thread.join();
+	}
+
+	private void run() {
+		while(running) {
+			if(ring.drain(dispatch, BATCH) == 0)
+				LockSupport.parkNanos(IDLE_NANOS);
+		}
+		ring.drain(dispatch, Integer.MAX_VALUE);
+	}
+}
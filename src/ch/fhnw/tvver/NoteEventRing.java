@@ -0,0 +1,91 @@
+package ch.fhnw.tvver;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single producer, single consumer ring buffer of note events. Events are
+ * stored in primitive arrays, publishing and draining do not allocate and
+ * do not lock. The producer only waits if the consumer is a full ring
+ * behind: it yields a few times and then parks with an exponentially growing
+ * timeout, so a consumer that is stuck for long, e.g. on a client that does
+ * not read, throttles the producer without burning a core.
+ */
+final class NoteEventRing {
+	private static final int  YIELDS         = 64;
+	private static final long MIN_PARK_NANOS = 1000;
+	private static final long MAX_PARK_NANOS = 1000000;
+
+	private final long[]     times;
+	private final int[]      events;
+	private final int        mask;
+	private final AtomicLong published = new AtomicLong();
+	private final AtomicLong consumed  = new AtomicLong();
+	private       long       consumedCache;
+
+	/**
+	 * @param capacity The number of events buffered, rounded up to a power of two.
+	 */
+	NoteEventRing(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		times  = new long[size];
+		events = new int[size];
+		mask   = size - 1;
+	}
+
+	/**
+	 * Appends an event, only to be called by the producer thread.
+	 */
+	void publish(long time, int key, int velocity, int kind) {
+		long seq = published.get();
+		if(seq - consumedCache >= times.length)
+			awaitSpace(seq);
+		int idx     = (int)seq & mask;
+		times[idx]  = time;
+		events[idx] = (key & 0x7F) | (velocity & 0x7F) << 8 | kind << 16;
+		published.lazySet(seq + 1);
+	}
+
+	private void awaitSpace(long seq) {
+		long park = MIN_PARK_NANOS;
+		for(int tries = 0; ; tries++) {
+			consumedCache = consumed.get();
+			if(seq - consumedCache < times.length)
+				return;
+			if(tries < YIELDS) {
+				Thread.yield();
+			} else {
+				LockSupport.parkNanos(this, park);
+				park = Math.min(park * 2, MAX_PARK_NANOS);
+			}
+		}
+	}
+
+	/**
+	 * Delivers pending events to <code>listener</code>, only to be called by the consumer thread.
+	 * 
+	 * @param listener Receives the events.
+	 * @param max The maximum number of events to deliver.
+	 * @return The number of events delivered.
+	 */
+	int drain(NoteListener listener, int max) {
+		long seq   = consumed.get();
+		long limit = Math.min(published.get(), seq + max);
+		int  count = (int)(limit - seq);
+		for(; seq < limit; seq++) {
+			int idx   = (int)seq & mask;
+			int event = events[idx];
+			listener.note(times[idx], event & 0x7F, (event >> 8) & 0x7F, event >> 16);
+		}
+		consumed.lazySet(limit);
+		return count;
+	}
+
+	long getPublished() {
+		return published.get();
+	}
+
+	long getConsumed() {
+		return consumed.get();
+	}
+}
@@ -0,0 +1,24 @@
+package ch.fhnw.tvver;
+
+/**
+ * Consumer of the note events published by {@link PCM2MIDIShell}. Listeners
+ * are called on the dispatcher thread, never on the render thread.
+ */
+public interface NoteListener {
+	/** A note off, sent when the note length of a detected note expired or the detector signaled it. */
+	int NOTE_OFF       = 0;
+	/** First detection of a key which sounds in the reference. */
+	int TRUE_POSITIVE  = 1;
+	/** Another detection of a key which was already detected while sounding in the reference. */
+	int REPEATED       = 2;
+	/** Detection of a key which does not sound in the reference. */
+	int FALSE_POSITIVE = 3;
+
+	/**
+	 * @param time The frame time of the event in microseconds.
+	 * @param key The MIDI key.
+	 * @param velocity The velocity, 0 for {@link #NOTE_OFF}.
+	 * @param kind One of {@link #NOTE_OFF}, {@link #TRUE_POSITIVE}, {@link #REPEATED} or {@link #FALSE_POSITIVE}.
+	 */
+	void note(long time, int key, int velocity, int kind);
+}
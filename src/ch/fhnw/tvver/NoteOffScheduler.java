@@ -0,0 +1,113 @@
+package ch.fhnw.tvver;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Schedules timed note offs for the 128 MIDI keys. Pending note offs are
+ * kept in an indexed binary min-heap ordered by due time with at most one
+ * entry per key, so memory is fixed, rescheduling a key moves its entry and
+ * nothing is allocated per note. {@link #advance(long, IntConsumer)} costs
+ * O(1) if nothing is due and O(log 128) per note off released.
+ */
+final class NoteOffScheduler {
+	private static final int NUM_KEYS = 128;
+
+	private final long[] dueTimes = new long[NUM_KEYS];
+	private final int[]  heap     = new int[NUM_KEYS];
+	private final int[]  position = new int[NUM_KEYS];
+	private       int    size;
+
+	NoteOffScheduler() {
+		for(int key = 0; key < NUM_KEYS; key++)
+			position[key] = -1;
+	}
+
+	/**
+	 * Schedules a note off, replacing a pending note off of the same key.
+	 * 
+	 * @param key The MIDI key.
+	 * @param time The due time in microseconds.
+	 */
+	void schedule(int key, long time) {
+		dueTimes[key] = time;
+		int pos = position[key];
+		if(pos < 0) {
+			pos = size++;
+			heap[pos]     = key;
+			position[key] = pos;
+		}
+		siftDown(siftUp(pos));
+	}
+
+	/**
+	 * Drops the pending note off of a key, if any.
+	 * 
+	 * @param key The MIDI key.
+	 */
+	void cancel(int key) {
+		int pos = position[key];
+		if(pos >= 0)
+			remove(pos);
+	}
+
+	/**
+	 * Releases all note offs due at or before <code>time</code> in order of their due time.
+	 * 
+	 * @param time The current time in microseconds.
+	 * @param noteOff Receives the key of every released note off.
+	 */
+	void advance(long time, IntConsumer noteOff) {
+		while(size > 0 && dueTimes[heap[0]] <= time) {
+			int key = heap[0];
+			remove(0);
+			noteOff.accept(key);
+		}
+	}
+
+	boolean isScheduled(int key) {
+		return position[key] >= 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	private void remove(int pos) {
+		int key = heap[pos];
+		position[key] = -1;
+		if(--size == pos) return;
+		heap[pos]           = heap[size];
+		position[heap[pos]] = pos;
+		siftDown(siftUp(pos));
+	}
+
+	private int siftUp(int pos) {
+		int key = heap[pos];
+		while(pos > 0) {
+			int parent = (pos - 1) >> 1;
+			if(dueTimes[heap[parent]] <= dueTimes[key]) break;
+			heap[pos]           = heap[parent];
+			position[heap[pos]] = pos;
+			pos                 = parent;
+		}
+		heap[pos]     = key;
+		position[key] = pos;
+		return pos;
+	}
+
+	private void siftDown(int pos) {
+		int key = heap[pos];
+		for(;;) {
+			int child = 2 * pos + 1;
+			if(child >= size) break;
+			if(child + 1 < size && dueTimes[heap[child + 1]] < dueTimes[heap[child]])
+				child++;
+			if(dueTimes[key] <= dueTimes[heap[child]]) break;
+			heap[pos]           = heap[child];
+			position[heap[pos]] = pos;
+			pos                 = child;
+		}
+		heap[pos]     = key;
+		position[key] = pos;
+	}
+}
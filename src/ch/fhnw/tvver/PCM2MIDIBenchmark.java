@@ -0,0 +1,112 @@
+package ch.fhnw.tvver;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+
+import ch.fhnw.util.Log;
+
+/**
+ * End-to-end benchmark of a PCM2MIDI implementation over a corpus. Tracks
+ * are analysed headless one after the other, so the JVM wide memory and GC
+ * numbers can be attributed to a single track. For every track the report
+ * columns (including the grade) are written together with wall time,
+ * real-time factor, peak heap and GC time to
+ * <code>&lt;class&gt;_benchmark.txt</code> next to the regular report, tab
+ * separated.
+ */
+public class PCM2MIDIBenchmark {
+	private static final Log log = Log.create();
+
+	private static final double NS2SEC = 1E-9;
+	private static final double B2MB   = 1.0 / (1024 * 1024);
+	private static final String SEP    = PCM2MIDIShell.SEP;
+
+	static final String COLUMNS =
+			PCM2MIDIShell.COLUMNS + SEP +
+			"Wall time [s]" + SEP +
+			"Real-time factor" + SEP +
+			"Peak heap [MB]" + SEP +
+			"GC time [ms]" + SEP +
+			"GC count";
+
+	@SuppressWarnings("unchecked")
+	public static void main(String[] args) throws Throwable {
+		if(args.length < 2) {
+			log.info("Usage: " + PCM2MIDIBenchmark.class.getName() + " <audio_file> <class>");
+			System.exit(0);
+		}
+
+		File                   src       = new File(args[0]);
+		Class<AbstractPCM2MIDI> cls      = (Class<AbstractPCM2MIDI>)Class.forName("ch.fhnw.tvver." + args[1]);
+		List<AbstractPCM2MIDI> pcm2midis = PCM2MIDIShell.getInputs(src, cls);
+		if(pcm2midis.isEmpty()) {
+			System.out.println("No inputs found in '"+src+"'");
+			System.exit(1);
+		}
+
+		try(PrintWriter out = new PrintWriter(new File(src.isDirectory() ? src : src.getParentFile(), args[1] + "_benchmark.txt"))) {
+			out.println(COLUMNS);
+			System.out.println(COLUMNS);
+			for(AbstractPCM2MIDI pcm2midi : pcm2midis) {
+				String row = run(pcm2midi);
+				out.println(row);
+				out.flush();
+				System.out.println(row);
+			}
+		}
+		System.exit(0);
+	}
+
+	private static String run(AbstractPCM2MIDI pcm2midi) {
+		PCM2MIDIShell shell = pcm2midi.getShell();
+
+		System.gc();
+		List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
+		for(MemoryPoolMXBean pool : pools)
+			if(pool.getType() == MemoryType.HEAP)
+				pool.resetPeakUsage();
+		long gcTime  = getGCTime();
+		long gcCount = getGCCount();
+		long start   = System.nanoTime();
+
+		shell.runHeadless(pcm2midi);
+
+		double wall     = (System.nanoTime() - start) * NS2SEC;
+		long   peakHeap = 0;
+		for(MemoryPoolMXBean pool : pools) {
+			MemoryUsage peak = pool.getType() == MemoryType.HEAP ? pool.getPeakUsage() : null;
+			if(peak != null)
+				peakHeap += peak.getUsed();
+		}
+
+		String row = shell.getTrack().getName() + SEP + pcm2midi.getReport();
+		if(!(row.endsWith(SEP)))
+			row += SEP;
+		row += String.format("%.3f", wall) + SEP;
+		row += String.format("%.2f", shell.getAudioTime() / wall) + SEP;
+		row += String.format("%.1f", peakHeap * B2MB) + SEP;
+		row += (getGCTime() - gcTime) + SEP;
+		row += (getGCCount() - gcCount);
+		return row;
+	}
+
+	private static long getGCTime() {
+		long result = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			result += Math.max(0, gc.getCollectionTime());
+		return result;
+	}
+
+	private static long getGCCount() {
+		long result = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			result += Math.max(0, gc.getCollectionCount());
+		return result;
+	}
+}
@@ -0,0 +1,210 @@
+package ch.fhnw.tvver;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.fhnw.ether.media.AbstractFrameSource;
+import ch.fhnw.tvver.audio.RawPCMAudioSource;
+import ch.fhnw.tvver.midi.NoteStreamWriter;
+import ch.fhnw.util.Log;
+
+/**
+ * A local service converting PCM to notes for many clients at once. A client
+ * connects over TCP on the loopback interface, streams raw PCM in the format
+ * the server was started with and half-closes its output at the end. Detected
+ * notes are sent back while the audio is streamed, as lines written by
+ * {@link NoteStreamWriter}, and the server closes the connection after the
+ * last note.<br>
+ * <br>
+ * Every connection is a session with its own PCM2MIDI instance, and therefore
+ * its own pipeline, running on its own thread. There are at most
+ * <code>maxSessions</code> sessions, further connections wait in the accept
+ * backlog until a session ends. Within a session, a client that does not read
+ * its notes eventually blocks the pipeline, which then stops reading PCM, so
+ * TCP flow control slows the client down instead of the server buffering.
+ * The blocked render thread parks, see {@link NoteEventRing}, a stalled
+ * client costs no CPU.
+ */
+public final class PCM2MIDIServer implements AutoCloseable {
+	private static final Log log = Log.create();
+
+	public static final int DEFAULT_PORT = 7373;
+
+	private final Class<? extends AbstractPCM2MIDI> cls;
+	private final float                             sampleRate;
+	private final int                               numChannels;
+	private final int                               bitsPerSample;
+	private final int                               frameSize;
+	private final int                               maxSessions;
+	private final Semaphore                         permits;
+	private final AtomicInteger                     sessions = new AtomicInteger();
+	private final AtomicInteger                     ids      = new AtomicInteger();
+	private final Set<SocketChannel>                clients  = ConcurrentHashMap.newKeySet();
+	private final ExecutorService                   workers  = Executors.newCachedThreadPool();
+	private       ServerSocketChannel               server;
+	private       Thread                            acceptor;
+
+	/**
+	 * @param cls The PCM2MIDI implementation, it needs a public constructor taking a name and an {@link AbstractFrameSource}.
+	 * @param maxSessions The number of sessions served at the same time.
+	 * @param sampleRate The sample rate of the PCM sent by clients.
+	 * @param numChannels The number of interleaved channels sent by clients.
+	 * @param bitsPerSample The sample size sent by clients, see {@link RawPCMAudioSource}.
+	 * @param frameSize The number of samples (over all channels) per frame.
+	 */
+	public PCM2MIDIServer(Class<? extends AbstractPCM2MIDI> cls, int maxSessions, float sampleRate, int numChannels, int bitsPerSample, int frameSize) {
+		this.cls           = cls;
+		this.maxSessions   = maxSessions;
+		this.permits       = new Semaphore(maxSessions);
+		this.sampleRate    = sampleRate;
+		this.numChannels   = numChannels;
+		this.bitsPerSample = bitsPerSample;
+		this.frameSize     = frameSize;
+	}
+
+	/**
+	 * Starts accepting connections on the loopback interface.
+	 * 
+	 * @param port The port, 0 picks a free one, see {@link #getPort()}.
+	 * @throws IOException Thrown if the port could not be bound.
+	 */
+	public synchronized void start(int port) throws IOException {
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), maxSessions);
+		acceptor = new Thread(this::accept, "PCM2MIDI server " + getPort());
+		acceptor.start();
+	}
+
+	private void accept() {
+		try {
+			for(;;) {
+				permits.acquire();
+				SocketChannel client;
+				try {
+					client = server.accept();
+				} catch(IOException e) {
+					permits.release();
+					throw e;
+				}
+				sessions.incrementAndGet();
+				clients.add(client);
+				workers.execute(() -> {
+					try {
+						serve(client);
+					} finally {
+						clients.remove(client);
+						sessions.decrementAndGet();
+						permits.release();
+					}
+				});
+			}
+		} catch(ClosedChannelException | InterruptedException e) {
+			// closed
+		} catch(IOException e) {
+			log.warning(e);
+		}
+	}
+
+	private void serve(SocketChannel client) {
+		try {
+			client.setOption(StandardSocketOptions.TCP_NODELAY, Boolean.TRUE);
+			RawPCMAudioSource source = new RawPCMAudioSource(client, sampleRate, numChannels, bitsPerSample, frameSize);
+			AbstractPCM2MIDI  impl   = cls.getConstructor(String.class, AbstractFrameSource.class).newInstance("session-" + ids.incrementAndGet(), source);
+			NoteStreamWriter  out    = new NoteStreamWriter(Channels.newOutputStream(client));
+			impl.getShell().addNoteListener(out);
+			impl.getShell().runHeadless(impl);
+			if(impl.getException() != null)
+				log.warning(impl.getException());
+		} catch(Throwable t) {
+			log.warning(t);
+		} finally {
+			try {
+				client.close();
+			} catch(IOException e) {
+				log.warning(e);
+			}
+		}
+	}
+
+	/**
+	 * @return The port the server is listening on.
+	 */
+	public int getPort() throws IOException {
+		return ((InetSocketAddress)server.getLocalAddress()).getPort();
+	}
+
+	/**
+	 * @return The number of sessions currently served.
+	 */
+	public int getSessionCount() {
+		return sessions.get();
+	}
+
+	public int getMaxSessions() {
+		return maxSessions;
+	}
+
+	/**
+	 * Stops accepting connections and closes all open sessions. If the
+	 * calling thread is interrupted while waiting for the acceptor, the
+	 * sessions are closed anyway and the interrupt flag is restored.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if(server == null) return;
+		server.close();
+		acceptor.interrupt();
+		try {
+			acceptor.join();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for(SocketChannel client : clients)
+			client.close();
+		workers.shutdown();
+		server = null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static void main(String[] args) throws Throwable {
+		if(args.length < 1) {
+			log.info("Usage: " + PCM2MIDIServer.class.getName() + " <class> [-port <port>] [-sessions <n>] [-rate <Hz>] [-channels <n>] [-bits <8|16|24|32>] [-frame <samples>]");
+			System.exit(0);
+		}
+
+		int   port        = DEFAULT_PORT;
+		int   maxSessions = Runtime.getRuntime().availableProcessors();
+		float sampleRate  = 44100;
+		int   numChannels = 1;
+		int   bits        = 16;
+		int   frameSize   = 1024;
+		for(int i = 1; i < args.length; i++) {
+			switch(args[i]) {
+			case "-port":     port        = Integer.parseInt(args[++i]); break;
+			case "-sessions": maxSessions = Integer.parseInt(args[++i]); break;
+			case "-rate":     sampleRate  = Float.parseFloat(args[++i]); break;
+			case "-channels": numChannels = Integer.parseInt(args[++i]); break;
+			case "-bits":     bits        = Integer.parseInt(args[++i]); break;
+			case "-frame":    frameSize   = Integer.parseInt(args[++i]); break;
+			default:          log.warning("Ignoring '" + args[i] + "'");
+			}
+		}
+
+		Class<AbstractPCM2MIDI> cls    = (Class<AbstractPCM2MIDI>)Class.forName("ch.fhnw.tvver." + args[0]);
+		PCM2MIDIServer          server = new PCM2MIDIServer(cls, maxSessions, sampleRate, numChannels, bits, frameSize * numChannels);
+		server.start(port);
+		log.info("Listening on " + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getPort() + ", at most " + maxSessions + " sessions");
+	}
+}
@@ -1,37 +1,40 @@
 package ch.fhnw.tvver;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.management.ManagementFactory;
 import java.net.MalformedURLException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
 
 import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MidiChannel;
 import javax.sound.midi.MidiEvent;
 import javax.sound.midi.MidiMessage;
-import javax.sound.midi.MidiUnavailableException;
 import javax.sound.midi.Receiver;
 import javax.sound.midi.ShortMessage;
-import javax.sound.sampled.AudioFileFormat.Type;
-import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioFormat.Encoding;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
 
+import ch.fhnw.ether.audio.AudioFrame;
 import ch.fhnw.ether.audio.IAudioRenderTarget;
+import ch.fhnw.ether.audio.IAudioSource;
 import ch.fhnw.ether.audio.JavaSoundTarget;
 import ch.fhnw.ether.audio.NullAudioTarget;
 import ch.fhnw.ether.audio.URLAudioSource;
+import ch.fhnw.ether.media.AbstractFrameSource;
+import ch.fhnw.ether.media.IScheduler;
 import ch.fhnw.ether.media.RenderCommandException;
 import ch.fhnw.ether.media.RenderProgram;
 import ch.fhnw.ether.midi.MidiToString;
@@ -41,7 +44,13 @@ import ch.fhnw.ether.ui.ParameterWindow;
 import ch.fhnw.ether.ui.ParameterWindow.Flag;
 import ch.fhnw.ether.ui.PlotWindow;
 import ch.fhnw.tvver.AbstractPCM2MIDI.Flags;
-import ch.fhnw.util.ByteList;
+import ch.fhnw.tvver.audio.FloatBufferAudioSource;
+import ch.fhnw.tvver.audio.PCMCache;
+import ch.fhnw.tvver.audio.PCMCacheWriter;
+import ch.fhnw.tvver.audio.WaveFileWriter;
+import ch.fhnw.tvver.midi.MidiFileRecorder;
+import ch.fhnw.tvver.profiling.LatencyHistogram;
+import ch.fhnw.tvver.profiling.StageProfiler;
 import ch.fhnw.util.Log;
 import ch.fhnw.util.TextUtilities;
 import ch.fhnw.util.color.RGB;
@@ -50,18 +59,36 @@ public final class PCM2MIDIShell {
 	private static final Log log = Log.create();
 
 	private final static double         SEC2US      = 1000000;
+	private final static double         NS2SEC      = 1E-9;
+	private final static double         NS2MS       = 1E-6;
+	private final static long           US2NS       = 1000;
+	private final static long           MS2US       = 1000;
+	private final static double         NOTE_LENGTH = 0.3;
+	// identifies the note filtering in sendMidiMsg(), change when it changes
+	private final static String         PCM_CACHE_VARIANT = "PCM2MIDIShell-1";
 
 	private double                      time;
+	private volatile double             audioTime;
+	private volatile long               processingTime;
 	private int                         numTrueDetectedNotes;
 	private int                         numFalseDetectedNotes;
 	private int                         numRefNotes;
 	private final EnumSet<Flags>        flags;
-	private ByteList                    pcmOut = new ByteList();
+	private WaveFileWriter              waveOut;
+	private MidiFileRecorder            midiOut;
 	private MidiChannel                 playbackChannel;
-	private List<MidiEvent>             pendingNoteOffs = new LinkedList<MidiEvent>();
+	private final NoteOffScheduler      noteOffs    = new NoteOffScheduler();
+	private final NoteEventDispatcher   events;
+	private long                        frameTime;
+	private final IntConsumer           releaseNote;
 	private final RenderProgram<IAudioRenderTarget> program;
 	private       IAudioRenderTarget    audioOut;
 	private final File                  track;
+	private final IAudioSource          source;
+	private PCMCacheWriter              pcmCache;
+	private final StageProfiler         profiler;
+	// reference onset to detection, recorded on the render thread
+	private final LatencyHistogram      latency     = new LatencyHistogram();
 	boolean[]                           detected = new boolean[128];
 	private Set<File>                   midiDump = new HashSet<>();
 	final MidiKeyTracker                tracker  = new MidiKeyTracker() {
@@ -70,13 +97,58 @@ public final class PCM2MIDIShell {
 			super.setVelocity(key, velocity);
 			if(velocity == 0) detected[key] = false;
 		};
+
+		@Override
+		protected void run(IAudioRenderTarget target) throws RenderCommandException {
+			super.run(target);
+			AudioFrame frame = target.getFrame();
+			audioTime = frame.playOutTime + frame.samples.length / (double)(target.getNumChannels() * target.getSampleRate());
+			frameTime = (long)(frame.playOutTime * SEC2US);
+			noteOffs.advance(frameTime, releaseNote);
+		}
 	};
 	private TreeSet<MidiEvent>          midiRef        = new TreeSet<MidiEvent>(URLMidiSource.MIDI_EVWNT_CMP);
 
 	public PCM2MIDIShell(File track, EnumSet<Flags> flags) throws MalformedURLException, IOException, InvalidMidiDataException {		
-		this.track = track;
-		this.flags = flags;
+		this(track, null, flags);
+	}
+
+	/**
+	 * Creates a shell analysing a live source without reference notes. Detected notes
+	 * are only available through {@link #addNoteListener(NoteListener)}.
+	 * 
+	 * @param name Names the session, used for output files such as the profile.
+	 * @param source The source to analyse, usually streaming.
+	 * @param flags Control output, {@link Flags#PCM_CACHE} is ignored.
+	 */
+	public <S extends AbstractFrameSource & IAudioSource> PCM2MIDIShell(String name, S source, EnumSet<Flags> flags) throws MalformedURLException, IOException, InvalidMidiDataException {
+		this(new File(name), source, flags);
+	}
+
+	private <S extends AbstractFrameSource & IAudioSource> PCM2MIDIShell(File track, S live, EnumSet<Flags> flags) throws MalformedURLException, IOException, InvalidMidiDataException {		
+		this.track    = track;
+		this.flags    = flags;
+		this.profiler = new StageProfiler(flags.contains(Flags.PROFILE));
+		this.events = new NoteEventDispatcher("Note events " + track.getName());
+		events.addListener(this::score);
+		events.addListener(this::plot);
+		events.addListener(this::play);
+		releaseNote = key -> events.publish(frameTime, key, 0, NoteListener.NOTE_OFF);
+		if(flags.contains(Flags.RECORD_MIDI)) {
+			midiOut = new MidiFileRecorder();
+			events.addListener(midiOut);
+		}
+
+		AbstractFrameSource src = live == null ? createSource() : live;
+		source  = (IAudioSource)src;
+		program = new RenderProgram<>(src);
+		profiler.begin(program);
+		if(pcmCache != null)
+			profiler.addLast(program, pcmCache);
+		profiler.addLast(program, tracker);
+	}
 
+	private AbstractFrameSource createSource() throws MalformedURLException, IOException, InvalidMidiDataException {
 		URLAudioSource src = new URLAudioSource(track.toURI().toURL(), 1) {
 			long lasttime;
 			@Override
@@ -112,17 +184,55 @@ public final class PCM2MIDIShell {
 
 		src.getMidiEvents(midiRef);
 		tracker.setRefMidi(midiRef);
-		program = new RenderProgram<>(src, tracker);
+
+		AbstractFrameSource source = src;
+		if(flags.contains(Flags.PCM_CACHE) && isMidiFile(track)) {
+			try {
+				PCMCache cache  = PCMCache.getDefault();
+				String   key    = cache.getKey(track, src.getSampleRate(), src.getNumChannels(), PCM_CACHE_VARIANT);
+				FloatBufferAudioSource cached = cache.open(key);
+				if(cached != null)
+					source = cached;
+				else
+					pcmCache = cache.create(key);
+			} catch(IOException e) {
+				log.warning(e);
+			}
+		}
+		return source;
+	}
+
+	private static boolean isMidiFile(File file) {
+		String name = file.getName().toLowerCase();
+		return name.endsWith(".mid") || name.endsWith(".midi");
+	}
+
+	private void finishPCMCache(boolean complete) {
+		if(pcmCache == null) return;
+		try {
+			if(complete)
+				pcmCache.commit();
+			else
+				pcmCache.abort();
+		} catch(IOException e) {
+			log.warning(e);
+		}
+		pcmCache = null;
 	}
 
 	public void start(List<AbstractPCM2MIDI> impls, int idx) throws RenderCommandException {
 		AbstractPCM2MIDI impl = impls.get(idx);
 
 		impl.initializePipeline(program);
+		addWAVOutput(impl);
+		profiler.end(program);
 
 		new ParameterWindow(program, Flag.EXIT_ON_CLOSE, Flag.HIDE_ON_STOP) {
 			@Override
 			protected void stopped() {
+				finishPCMCache(false);
+				closeEvents();
+				writeProfile();
 				impl.shutdown();
 				super.stopped();
 				Platform.get().runOnMainThread(()->{
@@ -141,46 +251,207 @@ public final class PCM2MIDIShell {
 		if(!(getFlag(Flags.MAX_SPEED)))
 			new PlotWindow(program);
 
-		audioOut = impl.getFlag(Flags.MAX_SPEED) ? new NullAudioTarget(1, 44100) : new JavaSoundTarget(pcmOut);
+		audioOut = impl.getFlag(Flags.MAX_SPEED) ? new NullAudioTarget(source.getNumChannels(), source.getSampleRate()) : new JavaSoundTarget();
 		audioOut.useProgram(program);
+		events.start();
 		audioOut.start();
 	}
 
-	void noteOn(int key, int velocity) {
-		time              = audioOut.getFrame().playOutTime;
-		double noteOnTime = time;
-
+	/**
+	 * Runs the analysis of this track on the calling thread without any UI and
+	 * returns when the track has been processed completely. Frames are rendered
+	 * as fast as the pipeline allows, neither the platform nor any window is
+	 * involved. Exceptions are recorded with
+	 * {@link AbstractPCM2MIDI#handleException(Throwable)} and show up in the report.
+	 */
+	void runHeadless(AbstractPCM2MIDI impl) {
+		long start = System.nanoTime();
 		try {
-			MidiEvent noteOff = new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, 0, key), (long) ((noteOnTime + 0.3) * SEC2US));
+			impl.initializePipeline(program);
+			addWAVOutput(impl);
+			profiler.end(program);
+			audioOut = new NullAudioTarget(source.getNumChannels(), source.getSampleRate());
+			audioOut.useProgram(program);
+			events.start();
+			audioOut.start();
+			audioOut.sleepUntil(IScheduler.NOT_RENDERING);
+			audioOut.stop();
+			events.close();
+			finishPCMCache(true);
+			writeProfile();
+			impl.shutdown();
+		} catch(Throwable t) {
+			finishPCMCache(false);
+			closeEvents();
+			impl.handleException(t);
+		}
+		processingTime = System.nanoTime() - start;
+	}
 
-			if(playbackChannel != null) {
-				playbackChannel.noteOn(key, velocity);
-				pendingNoteOffs.add(noteOff);
-			}
+	/**
+	 * Adds a listener for the detected notes and their note offs, called in order on
+	 * the note event thread. Must be called before the analysis is started.
+	 */
+	public void addNoteListener(NoteListener listener) {
+		events.addListener(listener);
+	}
+
+	/**
+	 * @return The length of the audio processed so far in seconds.
+	 */
+	double getAudioTime() {
+		return audioTime;
+	}
 
-			int[] vs = tracker.getVelocities();
+	/**
+	 * @return The wall clock time of {@link #runHeadless(AbstractPCM2MIDI)} in seconds.
+	 */
+	double getProcessingTime() {
+		return processingTime * NS2SEC;
+	}
 
-			if(velocity > 0) {
-				if(vs[key] > 0) {
-					if(!(detected[key])) {
-						tracker.bar(key/128f, RGB.GREEN);
-						numTrueDetectedNotes++;
-						detected[key] = true;
-					} else {
-						tracker.bar(key/128f, RGB.YELLOW);
-					}
-				} else {
-					tracker.bar(key/128f, RGB.RED);
-					numFalseDetectedNotes++;
+	/**
+	 * @return The ratio of audio time to processing time, above 1 means faster than real-time.
+	 */
+	double getRealTimeFactor() {
+		return getAudioTime() / getProcessingTime();
+	}
+
+	/**
+	 * Runs all tracks headless, each on its own worker.
+	 * 
+	 * @param impls The tracks to analyse.
+	 * @param parallelism The number of tracks analysed at the same time.
+	 */
+	static void runHeadless(List<AbstractPCM2MIDI> impls, int parallelism) throws InterruptedException {
+		ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, impls.size())));
+		try {
+			List<Future<?>> results = new ArrayList<>(impls.size());
+			for(AbstractPCM2MIDI impl : impls)
+				results.add(workers.submit(()->impl.getShell().runHeadless(impl)));
+			for(Future<?> result : results) {
+				try {
+					result.get();
+				} catch(Throwable t) {
+					log.warning(t);
 				}
 			}
-		} catch(Throwable t) {
-			log.warning(t);
+		} finally {
+			workers.shutdown();
+		}
+	}
+
+	/**
+	 * Classifies a detected note against the reference and publishes it to the
+	 * note listeners. Runs on the render thread in constant time without allocation.
+	 */
+	void noteOn(int key, int velocity) {
+		if(velocity == 0) {
+			noteOff(key);
+			return;
+		}
+
+		time = audioOut.getFrame().playOutTime;
+		long timeUs = (long)(time * SEC2US);
+		noteOffs.schedule(key, timeUs + (long)(NOTE_LENGTH * SEC2US));
+
+		int kind;
+		if(tracker.getVelocities()[key] > 0) {
+			if(!(detected[key])) {
+				kind = NoteListener.TRUE_POSITIVE;
+				detected[key] = true;
+				latency.record(latencyNs(timeUs, tracker.getOnsetTime(key)));
+			} else {
+				kind = NoteListener.REPEATED;
+			}
+		} else {
+			kind = NoteListener.FALSE_POSITIVE;
+		}
+		events.publish(timeUs, key, velocity, kind);
+	}
+
+	/**
+	 * @return The time from a reference onset in milliseconds to a detection in microseconds, in nanoseconds.
+	 */
+	static long latencyNs(long detectionUs, long onsetMs) {
+		return (detectionUs - onsetMs * MS2US) * US2NS;
+	}
+
+	//--- note listeners, called on the dispatcher thread
+
+	private void score(long time, int key, int velocity, int kind) {
+		switch(kind) {
+		case NoteListener.TRUE_POSITIVE:
+			numTrueDetectedNotes++;
+			break;
+		case NoteListener.FALSE_POSITIVE:
+			numFalseDetectedNotes++;
+			break;
+		}
+	}
+
+	private void plot(long time, int key, int velocity, int kind) {
+		switch(kind) {
+		case NoteListener.TRUE_POSITIVE:
+			tracker.bar(key/128f, RGB.GREEN);
+			break;
+		case NoteListener.REPEATED:
+			tracker.bar(key/128f, RGB.YELLOW);
+			break;
+		case NoteListener.FALSE_POSITIVE:
+			tracker.bar(key/128f, RGB.RED);
+			break;
+		}
+	}
+
+	private void play(long time, int key, int velocity, int kind) {
+		if(playbackChannel == null) return;
+		if(kind == NoteListener.NOTE_OFF)
+			playbackChannel.noteOff(key);
+		else
+			playbackChannel.noteOn(key, velocity);
+	}
+
+	private void closeEvents() {
+		try {
+			events.close();
+		} catch(InterruptedException e) {
+			log.warning(e);
 		}
 	}
 
-	private static final String SEP = "\t";
+	/**
+	 * Schedules a note off at the current frame time, it is sent when the next frame is rendered.
+	 */
+	void noteOff(int key) {
+		time = audioOut.getFrame().playOutTime;
+		noteOffs.schedule(key, (long)(time * SEC2US));
+	}
+
+	static final String SEP = "\t";
+	/**
+	 * @return The latencies from reference note on to true detection, detections
+	 * within the frame of the reference note on count as zero.
+	 */
+	LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	/**
+	 * @return The grade between 1 and 6 from the true and false detected notes.
+	 */
+	double getGrade() {
+		events.flush();
+
+		double trueDetectedRatio  = numTrueDetectedNotes /  (double)numRefNotes; 
+		double falseDetectedRatio = numFalseDetectedNotes / (double)numRefNotes; 
+
+		return 1 + (5 * Math.max(0, Math.min(trueDetectedRatio-0.5*falseDetectedRatio, 1)));
+	}
+
 	String getReport() {
+		events.flush();
+
 		String result = "";
 
 		result += (int)time + SEP;
@@ -188,33 +459,54 @@ public final class PCM2MIDIShell {
 		result += + numTrueDetectedNotes + SEP;
 		result += + numFalseDetectedNotes + SEP;
 
-		double trueDetectedRatio  = numTrueDetectedNotes /  (double)numRefNotes; 
-		double falseDetectedRatio = numFalseDetectedNotes / (double)numRefNotes; 
+		result += getGrade() + SEP;
 
-		result += (1 + (5 * Math.max(0, Math.min(trueDetectedRatio-0.5*falseDetectedRatio, 1)))) + SEP;
+		result += String.format("%.1f", latency.getMean() * NS2MS) + SEP;
+		result += String.format("%.1f", latency.getPercentile(95) * NS2MS) + SEP;
+		result += String.format("%.1f", latency.getMax() * NS2MS) + SEP;
 
 		return result;
 	}
 
-	private static final String COLUMNS = 
+	static final String COLUMNS = 
 			"File" + SEP + 
 			"Track length" + SEP +
 			"# of reference notes" + SEP +
 			"# of true detected notes" + SEP +
 			"# of false detected notes" + SEP +
-			"Grade";
+			"Grade" + SEP +
+			"Latency mean [ms]" + SEP +
+			"Latency p95 [ms]" + SEP +
+			"Latency max [ms]";
+
+	private static final String HEADLESS = "-headless";
+
+	/** Suffix of the MIDI files written with {@link Flags#RECORD_MIDI}, these are never used as input. */
+	static final String DETECTED_MIDI_SUFFIX = ".detected.mid";
+
+	/** Suffix of the WAV file written with {@link Flags#WAVE} while the track is processed. */
+	private static final String WAV_PART_SUFFIX = ".wav.part";
+
+	/** Suffix of the stage latency tables written with {@link Flags#PROFILE}. */
+	static final String PROFILE_SUFFIX = ".profile.txt";
 
 	@SuppressWarnings("unchecked")
 	public static void main(String[] args) throws Throwable {
-		if(args.length == 0) {
-			log.info("Usage: " + PCM2MIDIShell.class.getName() + " <audio_file> <class>");
+		if(args.length < 2) {
+			log.info("Usage: " + PCM2MIDIShell.class.getName() + " <audio_file> <class> [" + HEADLESS + " [<parallelism>]]");
 			System.exit(0);
 		}
 
-		Platform.get().init();
+		boolean headless    = args.length > 2 && HEADLESS.equals(args[2]);
+		int     parallelism = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+		if(!(headless))
+			Platform.get().init();
 
-		File        src    = new File(args[0]);
-		PrintWriter report = new PrintWriter(new File(src.isDirectory() ? src : src.getParentFile(), args[1] + "_report.txt"));
+		File        src     = new File(args[0]);
+		File        dir     = src.isDirectory() ? src : src.getParentFile();
+		PrintWriter report  = new PrintWriter(new File(dir, args[1] + "_report.txt"));
+		File        latency = new File(dir, args[1] + "_latency.txt");
 
 		report.println(COLUMNS);
 
@@ -225,42 +517,121 @@ public final class PCM2MIDIShell {
 			System.exit(1);
 		}
 
+		if(headless) {
+			// JVM start up to here: class loading, no platform or toolkit involved
+			double startup = ManagementFactory.getRuntimeMXBean().getUptime() / 1000.0;
+			long   start   = System.nanoTime();
+			runHeadless(pcm2midis, parallelism);
+			double elapsed = (System.nanoTime() - start) * NS2SEC;
+			writeReport(cls, pcm2midis, report);
+			writeLatency(pcm2midis, latency);
+			writeTimings(pcm2midis, startup, elapsed);
+			System.exit(0);
+		}
 
 		pcm2midis.get(0).getShell().start(pcm2midis, 0);
 
 		Platform.get().addShutdownTask(new Runnable() {
 			@Override
 			public void run() {
-				System.out.println("----------" + cls.getName());
-				System.out.println(COLUMNS);
-				for(AbstractPCM2MIDI pcm2midi : pcm2midis) {
-					File src = pcm2midi.getShell().getTrack();
-					String row = src.getName() + SEP;
-					try {
-						if(pcm2midi.getFlag(Flags.REPORT)) {
-							row += pcm2midi.getReport();
-							report.println(row);
-						} if(pcm2midi.getFlag(Flags.WAVE))
-							pcm2midi.writeWAV(new File(src.getParent(), TextUtilities.getFileNameWithoutExtension(src) + ".wav"));
-					} catch(Throwable t) {
-						if(t.getCause() != null) t = t.getCause();
-						row += t.getClass().getName() + ":" + t.getMessage() + SEP;
-						report.println(row);
-					}
-					System.out.println(row);
-				}
-				report.close();
+				writeReport(cls, pcm2midis, report);
+				writeLatency(pcm2midis, latency);
 			}
 		});
 
 		Platform.get().run();
 	}
 
+	private static void writeReport(Class<AbstractPCM2MIDI> cls, List<AbstractPCM2MIDI> pcm2midis, PrintWriter report) {
+		System.out.println("----------" + cls.getName());
+		System.out.println(COLUMNS);
+		for(AbstractPCM2MIDI pcm2midi : pcm2midis) {
+			File src = pcm2midi.getShell().getTrack();
+			String row = src.getName() + SEP;
+			try {
+				if(pcm2midi.getFlag(Flags.REPORT)) {
+					row += pcm2midi.getReport();
+					report.println(row);
+				} if(pcm2midi.getFlag(Flags.WAVE))
+					pcm2midi.writeWAV(getWAVFile(src));
+				if(pcm2midi.getFlag(Flags.RECORD_MIDI))
+					pcm2midi.writeMIDI(getMIDIFile(src));
+			} catch(Throwable t) {
+				if(t.getCause() != null) t = t.getCause();
+				row += t.getClass().getName() + ":" + t.getMessage() + SEP;
+				report.println(row);
+			}
+			System.out.println(row);
+		}
+		report.close();
+	}
+
+	private static final String LATENCY_COLUMNS = 
+			"From [ms]" + SEP + 
+			"To [ms]" + SEP +
+			"# of true detected notes" + SEP +
+			"Cumulative [%]";
+
+	/**
+	 * Writes the corpus wide histogram of detection latencies, one row per non empty bucket.
+	 */
+	private static void writeLatency(List<AbstractPCM2MIDI> pcm2midis, File file) {
+		LatencyHistogram corpus = new LatencyHistogram();
+		for(AbstractPCM2MIDI pcm2midi : pcm2midis)
+			corpus.add(pcm2midi.getShell().getLatency());
+
+		try(PrintWriter out = new PrintWriter(file)) {
+			System.out.println("----------");
+			System.out.println(LATENCY_COLUMNS);
+			out.println(LATENCY_COLUMNS);
+			long seen = 0;
+			for(int i = 0; i < LatencyHistogram.getNumBuckets(); i++) {
+				long count = corpus.getBucketCount(i);
+				if(count == 0) continue;
+				seen += count;
+				String row = 
+						String.format("%.3f", LatencyHistogram.getBucketLowerBound(i) * NS2MS) + SEP + 
+						String.format("%.3f", LatencyHistogram.getBucketUpperBound(i) * NS2MS) + SEP +
+						count + SEP +
+						String.format("%.1f", 100.0 * seen / corpus.getCount());
+				System.out.println(row);
+				out.println(row);
+			}
+		} catch(IOException e) {
+			log.warning(e);
+		}
+	}
+
+	private static final String TIMING_COLUMNS = 
+			"File" + SEP + 
+			"Audio [s]" + SEP +
+			"Processing [s]" + SEP +
+			"Real-time factor";
+
+	private static void writeTimings(List<AbstractPCM2MIDI> pcm2midis, double startup, double elapsed) {
+		System.out.println("----------");
+		System.out.println(TIMING_COLUMNS);
+		double audio = 0;
+		for(AbstractPCM2MIDI pcm2midi : pcm2midis) {
+			PCM2MIDIShell shell = pcm2midi.getShell();
+			audio += shell.getAudioTime();
+			System.out.println(shell.getTrack().getName() + SEP + 
+					String.format("%.2f", shell.getAudioTime()) + SEP + 
+					String.format("%.2f", shell.getProcessingTime()) + SEP +
+					String.format("%.1f", shell.getRealTimeFactor()));
+		}
+		System.out.println("Total" + SEP + 
+				String.format("%.2f", audio) + SEP + 
+				String.format("%.2f", elapsed) + SEP +
+				String.format("%.1f", audio / elapsed));
+		System.out.println("Startup [s]" + SEP + String.format("%.2f", startup));
+	}
+
 	protected File getTrack() {
 		return track;
 	}
 
-	private static List<AbstractPCM2MIDI> getInputs(File fileOrDir, Class<AbstractPCM2MIDI> cls) {
+	static List<AbstractPCM2MIDI> getInputs(File fileOrDir, Class<AbstractPCM2MIDI> cls) {
 		List<AbstractPCM2MIDI> result = new ArrayList<>();
 		getInputs(fileOrDir, cls, result);
 		return result;
@@ -268,9 +639,11 @@ public final class PCM2MIDIShell {
 
 	private static void getInputs(File fileOrDir, Class<AbstractPCM2MIDI> cls, List<AbstractPCM2MIDI> result) {
 		if(fileOrDir.isDirectory()) {
-			for(File f : fileOrDir.listFiles())
+			File[] files = fileOrDir.listFiles();
+			Arrays.sort(files);
+			for(File f : files)
 				getInputs(f, cls, result);
-		} else if(fileOrDir.isFile()) {
+		} else if(fileOrDir.isFile() && !(fileOrDir.getName().endsWith(DETECTED_MIDI_SUFFIX)) && !(fileOrDir.getName().endsWith(WAV_PART_SUFFIX))) {
 			try {
 				result.add(cls.getConstructor(File.class).newInstance(fileOrDir));
 			} catch(Throwable t) {}
@@ -281,13 +654,58 @@ public final class PCM2MIDIShell {
 		return flags.contains(flag);
 	}
 
-	void writeWAV(File file) throws IOException, ClassNotFoundException, MidiUnavailableException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, NoSuchMethodException, SecurityException {
-		AudioSystem.write(
-				new AudioInputStream(new ByteArrayInputStream(pcmOut._getArray(), 0, pcmOut.size()), 
-						new AudioFormat(Encoding.PCM_SIGNED, audioOut.getSampleRate(), 16, audioOut.getNumChannels(), audioOut.getNumChannels(), audioOut.getSampleRate(), false), 
-						pcmOut.size() / 4), 
-				Type.WAVE, 
-				file);
+	static File getWAVFile(File track) {
+		return new File(track.getParent(), TextUtilities.getFileNameWithoutExtension(track) + ".wav");
+	}
+
+	static File getProfileFile(File track) {
+		return new File(track.getParent(), TextUtilities.getFileNameWithoutExtension(track) + PROFILE_SUFFIX);
+	}
+
+	static File getMIDIFile(File track) {
+		return new File(track.getParent(), TextUtilities.getFileNameWithoutExtension(track) + DETECTED_MIDI_SUFFIX);
+	}
+
+	void writeMIDI(File file) throws IOException {
+		if(midiOut == null) return;
+		events.flush();
+		midiOut.write(file);
+	}
+
+	/**
+	 * @return The profiler of the render program, disabled unless {@link Flags#PROFILE} is set.
+	 */
+	StageProfiler getProfiler() {
+		return profiler;
+	}
+
+	private void writeProfile() {
+		if(!(profiler.isEnabled())) return;
+		try(PrintWriter out = new PrintWriter(getProfileFile(track))) {
+			profiler.write(out);
+		} catch(IOException e) {
+			log.warning(e);
+		}
+	}
+
+	// streams into a temporary file next to the track, the track itself may be the .wav being read
+	private void addWAVOutput(AbstractPCM2MIDI impl) throws RenderCommandException {
+		if(impl.getFlag(Flags.WAVE)) {
+			try {
+				File dir = getWAVFile(track).getAbsoluteFile().getParentFile();
+				waveOut = new WaveFileWriter(Files.createTempFile(dir.toPath(), TextUtilities.getFileNameWithoutExtension(track) + ".", WAV_PART_SUFFIX).toFile());
+			} catch(IOException e) {
+				throw new RenderCommandException(e);
+			}
+			profiler.addLast(program, waveOut);
+		}
+	}
+
+	void writeWAV(File file) throws IOException {
+		if(waveOut == null) return;
+		waveOut.close();
+		if(!(file.equals(waveOut.getFile())))
+			Files.move(waveOut.getFile().toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
 	}
 
 	public SortedSet<MidiEvent> getRefMidi() {
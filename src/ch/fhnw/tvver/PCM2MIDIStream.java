@@ -0,0 +1,65 @@
+package ch.fhnw.tvver;
+
+import java.io.File;
+
+import ch.fhnw.ether.media.AbstractFrameSource;
+import ch.fhnw.tvver.audio.RawPCMAudioSource;
+import ch.fhnw.tvver.midi.NoteStreamWriter;
+import ch.fhnw.util.Log;
+
+/**
+ * Runs a PCM2MIDI implementation continuously on raw PCM read from stdin or
+ * a named pipe and writes the detected notes to stdout as they are detected,
+ * see {@link NoteStreamWriter} for the format. There is no reference, so no
+ * report is written. The implementation needs a public constructor taking a
+ * name and an {@link AbstractFrameSource}, such as {@link PCM2MidConverter}.
+ */
+public class PCM2MIDIStream {
+	private static final Log log = Log.create();
+
+	private static final String STDIN = "-";
+
+	@SuppressWarnings("unchecked")
+	public static void main(String[] args) throws Throwable {
+		if(args.length < 1) {
+			log.info("Usage: " + PCM2MIDIStream.class.getName() + " <class> [<pcm_file_or_fifo> | " + STDIN + "] [-rate <Hz>] [-channels <n>] [-bits <8|16|24|32>] [-frame <samples>]");
+			System.exit(0);
+		}
+
+		String input       = STDIN;
+		float  sampleRate  = 44100;
+		int    numChannels = 1;
+		int    bits        = 16;
+		int    frameSize   = 1024;
+		for(int i = 1; i < args.length; i++) {
+			switch(args[i]) {
+			case "-rate":     sampleRate  = Float.parseFloat(args[++i]); break;
+			case "-channels": numChannels = Integer.parseInt(args[++i]); break;
+			case "-bits":     bits        = Integer.parseInt(args[++i]); break;
+			case "-frame":    frameSize   = Integer.parseInt(args[++i]); break;
+			default:          input       = args[i];
+			}
+		}
+
+		RawPCMAudioSource source = STDIN.equals(input) ? 
+				RawPCMAudioSource.stdin(sampleRate, numChannels, bits, frameSize * numChannels) : 
+				RawPCMAudioSource.open(new File(input).toPath(), sampleRate, numChannels, bits, frameSize * numChannels);
+
+		Class<AbstractPCM2MIDI> cls  = (Class<AbstractPCM2MIDI>)Class.forName("ch.fhnw.tvver." + args[0]);
+		AbstractPCM2MIDI        impl = cls.getConstructor(String.class, AbstractFrameSource.class).newInstance(STDIN.equals(input) ? "stdin" : new File(input).getName(), source);
+		NoteStreamWriter        out  = new NoteStreamWriter(System.out);
+		impl.getShell().addNoteListener(out);
+		impl.getShell().runHeadless(impl);
+
+		int status = 0;
+		if(impl.getException() != null) {
+			log.warning(impl.getException());
+			status = 1;
+		}
+		if(out.getError() != null) {
+			log.warning(out.getError());
+			status = 1;
+		}
+		System.exit(status);
+	}
+}
@@ -10,24 +10,47 @@ import javax.sound.sampled.UnsupportedAudioFileException;
 
 import ch.fhnw.ether.audio.AudioUtilities.Window;
 import ch.fhnw.ether.audio.IAudioRenderTarget;
+import ch.fhnw.ether.audio.IAudioSource;
 import ch.fhnw.ether.audio.fx.AutoGain;
 import ch.fhnw.ether.audio.fx.FFT;
+import ch.fhnw.ether.media.AbstractFrameSource;
 import ch.fhnw.ether.media.AbstractRenderCommand;
 import ch.fhnw.ether.media.RenderCommandException;
 import ch.fhnw.ether.media.RenderProgram;
 import ch.fhnw.ether.ui.IPlotable;
 import ch.fhnw.tvver.onsetdetection.OnSetDetection;
-import ch.fhnw.tvver.pitchdetection.MidiNote;
+import ch.fhnw.tvver.pitchdetection.Decimator;
 import ch.fhnw.tvver.pitchdetection.PitchDetection;
 import ch.fhnw.tvver.pitchdetection.PitchDetectionResult;
 import ch.fhnw.tvver.pitchdetection.YinPitchDetection;
+import ch.fhnw.tvver.profiling.StageProfiler;
 
 public class PCM2MidConverter extends AbstractPCM2MIDI {
-	private static final float A_SUB_CONTRA_OCTAVE_FREQ = 25.5f;
+	private final DetectorParameters params;
 
 	public PCM2MidConverter(File track) throws UnsupportedAudioFileException, IOException, MidiUnavailableException,
 			InvalidMidiDataException, RenderCommandException {
-		super(track, EnumSet.of(Flags.REPORT, Flags.MAX_SPEED));
+		this(track, DetectorParameters.DEFAULT);
+	}
+
+	public PCM2MidConverter(File track, DetectorParameters params) throws UnsupportedAudioFileException, IOException, MidiUnavailableException,
+			InvalidMidiDataException, RenderCommandException {
+		this(track, params, EnumSet.of(Flags.REPORT, Flags.MAX_SPEED, Flags.PCM_CACHE));
+	}
+
+	public <S extends AbstractFrameSource & IAudioSource> PCM2MidConverter(String name, S source) throws IOException, InvalidMidiDataException {
+		this(name, source, DetectorParameters.DEFAULT);
+	}
+
+	public <S extends AbstractFrameSource & IAudioSource> PCM2MidConverter(String name, S source, DetectorParameters params) throws IOException, InvalidMidiDataException {
+		super(name, source, EnumSet.of(Flags.MAX_SPEED));
+		this.params = params;
+	}
+
+	PCM2MidConverter(File track, DetectorParameters params, EnumSet<Flags> flags) throws UnsupportedAudioFileException, IOException, MidiUnavailableException,
+			InvalidMidiDataException, RenderCommandException {
+		super(track, flags);
+		this.params = params;
 	}
 
 	@Override
@@ -35,16 +58,23 @@ public class PCM2MidConverter extends AbstractPCM2MIDI {
 		// Window defines the windowing function in order to have a continuous
 		// signal if the sample
 		// gets repeated multiple times before and after.
-		FFT fft = new FFT(A_SUB_CONTRA_OCTAVE_FREQ, Window.HANN);
+		FFT fft = new FFT(params.getMinFrequency(), Window.HANN);
 
-		YinPitchDetection ypd = new YinPitchDetection();
-		OnSetDetection osd = new OnSetDetection(fft, ypd);
+		// pitch detection may run on a decimated stream, onset detection always sees the full rate
+		Decimator decimator = params.getMaxFrequency() > 0 ? new Decimator(params.getMaxFrequency()) : null;
+		YinPitchDetection ypd = new YinPitchDetection(params.getYinBufferSize(), params.getDifferenceFunction(), params.getYinThreshold(), decimator);
+		ypd.setFrequencyRange(params.getMinFrequency(), params.getMaxFrequency());
+		OnSetDetection osd = new OnSetDetection(fft, ypd, params.getBands(), params.getFluxThreshold(), params.getMinFlux(), params.getEnergyRise(),
+				params.getThresholdMode(), params.getThresholdFrames());
 
-		program.addLast(new AutoGain());
-		program.addLast(fft);
-		program.addLast(osd);
-		program.addLast(ypd);
-		program.addLast(new Converter(ypd));
+		StageProfiler profiler = getProfiler();
+		profiler.addLast(program, new AutoGain());
+		profiler.addLast(program, fft);
+		profiler.addLast(program, osd);
+		if(decimator != null)
+			profiler.addLast(program, decimator);
+		profiler.addLast(program, ypd);
+		profiler.addLast(program, new Converter(ypd));
 
 	}
 
@@ -62,12 +92,9 @@ public class PCM2MidConverter extends AbstractPCM2MIDI {
 
 		@Override
 		protected void run(IAudioRenderTarget target) throws RenderCommandException {
-			PitchDetectionResult result = this.pitchDetection.getResult();
-			if (result != null && result.isPitched()) {
-				MidiNote midiNote = result.getMidiNote();
-//				System.out.println(
-//						String.format("%5s %5s %10f", this.getActualNote(), midiNote.getId(), midiNote.getFrequency()));
-				PCM2MidConverter.this.noteOn(midiNote.getId(), 16);
+			int result = this.pitchDetection.getPackedResult();
+			if (PitchDetectionResult.isPitched(result)) {
+				PCM2MidConverter.this.noteOn(PitchDetectionResult.getMidiKey(result), 16);
 				this.pitchDetection.clearResult();
 			}
 		}
@@ -0,0 +1,241 @@
+package ch.fhnw.tvver;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import ch.fhnw.tvver.AbstractPCM2MIDI.Flags;
+import ch.fhnw.tvver.onsetdetection.OnSetDetection.ThresholdMode;
+import ch.fhnw.tvver.pitchdetection.MidiNoteUtils;
+import ch.fhnw.util.Log;
+
+/**
+ * Evaluates {@link PCM2MidConverter} with many {@link DetectorParameters}
+ * over a corpus of MIDI tracks, either on the full grid of {@link #AXES} or on randomly
+ * drawn points of it. Every track is synthesized once with the defaults,
+ * which fills the PCM cache, and all other configurations then read the same
+ * memory-mapped samples. Track runs are spread over a thread pool and the
+ * configurations are written to <code>sweep.txt</code> ranked by mean grade
+ * and then by processing time.
+ */
+public final class ParameterSweep {
+	private static final Log log = Log.create();
+
+	private static final String SEP   = PCM2MIDIShell.SEP;
+	private static final String GRID  = "grid";
+	private static final String RANDOM = "random";
+
+	private static final EnumSet<Flags> FLAGS = EnumSet.of(Flags.REPORT, Flags.MAX_SPEED, Flags.PCM_CACHE);
+
+	/**
+	 * One tunable parameter and the values searched for it.
+	 */
+	static final class Axis {
+		final String                                                     name;
+		final double[]                                                   values;
+		final Function<DetectorParameters, Object>                       get;
+		final BiFunction<DetectorParameters, Double, DetectorParameters> apply;
+
+		Axis(String name, Function<DetectorParameters, Object> get, BiFunction<DetectorParameters, Double, DetectorParameters> apply, double ... values) {
+			this.name   = name;
+			this.values = values;
+			this.get    = get;
+			this.apply  = apply;
+		}
+	}
+
+	private static final int HIGHEST_PIANO_KEY = 108;
+
+	private static double frequency(int key) {
+		return MidiNoteUtils.getMidiNote(key).getFrequency();
+	}
+
+	static final Axis[] AXES = {
+		new Axis("Yin threshold",    DetectorParameters::getYinThreshold,    (p, v) -> p.withYinThreshold(v),                                     0.1, 0.2, 0.3, 0.4, 0.5),
+		new Axis("Yin buffer",       DetectorParameters::getYinBufferSize,   (p, v) -> p.withYinBufferSize(v.intValue()),                         1024, 1400, 2048),
+		new Axis("Flux threshold",   DetectorParameters::getFluxThreshold,   (p, v) -> p.withFluxThreshold(v.floatValue()),                       20, 40, 60),
+		new Axis("Min flux",         DetectorParameters::getMinFlux,         (p, v) -> p.withMinFlux(v.floatValue()),                             2.5, 5, 10),
+		new Axis("Energy rise",      DetectorParameters::getEnergyRise,      (p, v) -> p.withEnergyRise(v),                                       0.04, 0.08, 0.16),
+		new Axis("Min frequency",    DetectorParameters::getMinFrequency,    (p, v) -> p.withMinFrequency(v.floatValue()),                        DetectorParameters.A_SUB_CONTRA_OCTAVE_FREQ),
+		new Axis("Threshold mode",   DetectorParameters::getThresholdMode,   (p, v) -> p.withThresholdMode(ThresholdMode.values()[v.intValue()]), 0, 1),
+		new Axis("Threshold frames", DetectorParameters::getThresholdFrames, (p, v) -> p.withThresholdFrames(v.intValue()),                       5, 15),
+		// off, and decimated for the top of the piano (factor 4 at 44.1 kHz) or an octave below (8)
+		new Axis("Max frequency",    DetectorParameters::getMaxFrequency,    (p, v) -> p.withMaxFrequency(v.floatValue()),                        0, frequency(HIGHEST_PIANO_KEY), frequency(HIGHEST_PIANO_KEY - 12)),
+	};
+
+	private static final class Result {
+		final DetectorParameters params;
+		final double[]           grades;
+		final double[]           times;
+
+		Result(DetectorParameters params, int numTracks) {
+			this.params = params;
+			this.grades = new double[numTracks];
+			this.times  = new double[numTracks];
+		}
+
+		double getGrade() {
+			return Arrays.stream(grades).average().orElse(0);
+		}
+
+		double getTime() {
+			return Arrays.stream(times).sum();
+		}
+	}
+
+	public static void main(String[] args) throws Throwable {
+		if(args.length < 1) {
+			log.info("Usage: " + ParameterSweep.class.getName() + " <audio_file> [" + GRID + " | " + RANDOM + " <count> [<seed>]] [-parallelism <n>]");
+			System.exit(0);
+		}
+
+		File    src         = new File(args[0]);
+		int     parallelism = Runtime.getRuntime().availableProcessors();
+		boolean random      = false;
+		int     count       = 0;
+		long    seed        = 0;
+		for(int i = 1; i < args.length; i++) {
+			if(RANDOM.equals(args[i])) {
+				random = true;
+				count  = Integer.parseInt(args[++i]);
+				if(i + 1 < args.length && !(args[i + 1].startsWith("-")))
+					seed = Long.parseLong(args[++i]);
+			} else if("-parallelism".equals(args[i]))
+				parallelism = Integer.parseInt(args[++i]);
+		}
+
+		List<File> tracks = getTracks(src);
+		if(tracks.isEmpty()) {
+			System.out.println("No inputs found in '"+src+"'");
+			System.exit(1);
+		}
+
+		List<DetectorParameters> configs = random ? getRandom(count, new Random(seed)) : getGrid();
+		configs.remove(DetectorParameters.DEFAULT);
+		configs.add(0, DetectorParameters.DEFAULT);
+
+		List<Result> results = run(tracks, configs, parallelism);
+		Collections.sort(results, Comparator.comparingDouble((Result r) -> -r.getGrade()).thenComparingDouble(Result::getTime));
+
+		try(PrintWriter out = new PrintWriter(new File(src.isDirectory() ? src : src.getParentFile(), "sweep.txt"))) {
+			String columns = "Rank" + SEP + "Mean grade" + SEP + "Min grade" + SEP + "Processing [s]";
+			for(Axis axis : AXES)
+				columns += SEP + axis.name;
+			out.println(columns);
+			System.out.println(columns);
+			int rank = 1;
+			for(Result r : results) {
+				String row = rank++ + SEP +
+						String.format("%.3f", r.getGrade()) + SEP +
+						String.format("%.3f", Arrays.stream(r.grades).min().orElse(0)) + SEP +
+						String.format("%.2f", r.getTime());
+				for(Axis axis : AXES)
+					row += SEP + axis.get.apply(r.params);
+				out.println(row);
+				System.out.println(row);
+			}
+		}
+		System.exit(0);
+	}
+
+	private static List<Result> run(List<File> tracks, List<DetectorParameters> configs, int parallelism) throws InterruptedException {
+		List<Result> results = new ArrayList<>(configs.size());
+		for(DetectorParameters config : configs)
+			results.add(new Result(config, tracks.size()));
+
+		ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, parallelism));
+		try {
+			// the defaults go first and on their own, they synthesize and cache every track
+			await(submit(workers, tracks, results.subList(0, 1)));
+			await(submit(workers, tracks, results.subList(1, results.size())));
+		} finally {
+			workers.shutdown();
+		}
+		return results;
+	}
+
+	private static List<Future<?>> submit(ExecutorService workers, List<File> tracks, List<Result> results) {
+		List<Future<?>> result = new ArrayList<>();
+		for(Result r : results) {
+			for(int i = 0; i < tracks.size(); i++) {
+				final int  idx   = i;
+				final File track = tracks.get(i);
+				result.add(workers.submit(() -> {
+					try {
+						PCM2MidConverter impl = new PCM2MidConverter(track, r.params, FLAGS);
+						impl.getShell().runHeadless(impl);
+						if(impl.getException() != null)
+							log.warning(impl.getException());
+						r.grades[idx] = impl.getShell().getGrade();
+						r.times[idx]  = impl.getShell().getProcessingTime();
+					} catch(Throwable t) {
+						log.warning(t);
+						r.grades[idx] = 1;
+					}
+				}));
+			}
+		}
+		return result;
+	}
+
+	private static void await(List<Future<?>> futures) throws InterruptedException {
+		for(Future<?> future : futures) {
+			try {
+				future.get();
+			} catch(Throwable t) {
+				if(t instanceof InterruptedException) throw (InterruptedException)t;
+				log.warning(t);
+			}
+		}
+	}
+
+	static List<DetectorParameters> getGrid() {
+		List<DetectorParameters> result = new ArrayList<>();
+		result.add(DetectorParameters.DEFAULT);
+		for(Axis axis : AXES) {
+			List<DetectorParameters> next = new ArrayList<>(result.size() * axis.values.length);
+			for(DetectorParameters p : result)
+				for(double v : axis.values)
+					next.add(axis.apply.apply(p, v));
+			result = next;
+		}
+		return result;
+	}
+
+	static List<DetectorParameters> getRandom(int count, Random random) {
+		List<DetectorParameters> result = new ArrayList<>(count);
+		for(int i = 0; i < count; i++) {
+			DetectorParameters p = DetectorParameters.DEFAULT;
+			for(Axis axis : AXES)
+				p = axis.apply.apply(p, axis.values[random.nextInt(axis.values.length)]);
+			result.add(p);
+		}
+		return result;
+	}
+
+	private static List<File> getTracks(File fileOrDir) {
+		List<File> result = new ArrayList<>();
+		if(fileOrDir.isDirectory()) {
+			File[] files = fileOrDir.listFiles();
+			Arrays.sort(files);
+			for(File f : files)
+				result.addAll(getTracks(f));
+		} else if(fileOrDir.isFile()) {
+			String name = fileOrDir.getName().toLowerCase();
+			if((name.endsWith(".mid") || name.endsWith(".midi")) && !(name.endsWith(PCM2MIDIShell.DETECTED_MIDI_SUFFIX)))
+				result.add(fileOrDir);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,71 @@
+package ch.fhnw.tvver.audio;
+
+import java.nio.FloatBuffer;
+
+import ch.fhnw.ether.audio.AudioFrame;
+import ch.fhnw.ether.audio.IAudioRenderTarget;
+import ch.fhnw.ether.audio.IAudioSource;
+import ch.fhnw.ether.media.AbstractFrameSource;
+import ch.fhnw.ether.media.IRenderTarget;
+
+/**
+ * An audio source playing interleaved float samples from a buffer, e.g. a
+ * memory-mapped file. The buffer is only read, so several sources may share
+ * the same samples through {@link FloatBuffer#duplicate()}.
+ */
+public class FloatBufferAudioSource extends AbstractFrameSource implements IAudioSource {
+	private final FloatBuffer samples;
+	private final float       sampleRate;
+	private final int         numChannels;
+	private final int         frameSize;
+	private       long        sTime;
+
+	/**
+	 * @param samples The interleaved samples, played from the current position to the limit.
+	 * @param sampleRate The sample rate in Hz.
+	 * @param numChannels The number of interleaved channels.
+	 * @param frameSize The number of samples (over all channels) per frame.
+	 */
+	public FloatBufferAudioSource(FloatBuffer samples, float sampleRate, int numChannels, int frameSize) {
+		this.samples     = samples.duplicate();
+		this.sampleRate  = sampleRate;
+		this.numChannels = numChannels;
+		this.frameSize   = frameSize;
+	}
+
+	@Override
+	protected void run(IRenderTarget<?> target) {
+		float[] frame = new float[Math.min(frameSize, samples.remaining())];
+		samples.get(frame);
+		AudioFrame result = new AudioFrame(sTime, numChannels, sampleRate, frame);
+		sTime += frame.length / numChannels;
+		if(!(samples.hasRemaining()))
+			result.setLast(true);
+		((IAudioRenderTarget)target).setFrame(this, result);
+	}
+
+	@Override
+	public float getSampleRate() {
+		return sampleRate;
+	}
+
+	@Override
+	public int getNumChannels() {
+		return numChannels;
+	}
+
+	@Override
+	public long getLengthInFrames() {
+		return (samples.limit() + frameSize - 1) / frameSize;
+	}
+
+	@Override
+	public double getLengthInSeconds() {
+		return samples.limit() / (double)(numChannels * sampleRate);
+	}
+
+	@Override
+	public float getFrameRate() {
+		return (numChannels * sampleRate) / frameSize;
+	}
+}
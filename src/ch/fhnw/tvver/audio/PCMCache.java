@@ -0,0 +1,146 @@
+package ch.fhnw.tvver.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Soundbank;
+
+/**
+ * On-disk cache of synthesized PCM. Entries are keyed by the content hash of
+ * the source file, the sample rate, the channel count, the soundbank and a
+ * caller supplied variant describing how the source is rendered. An entry
+ * is a small header followed by the raw little endian float samples and is
+ * read back memory-mapped, so a hit replaces the synthesizer completely.<br>
+ * <br>
+ * The cache directory is <code>~/.pcm2midi/pcm</code> and can be changed
+ * with the system property <code>ch.fhnw.tvver.pcmcache</code>. The soundbank
+ * is identified by the default soundbank of the system synthesizer or by the
+ * system property <code>ch.fhnw.tvver.soundbank</code>.
+ */
+public final class PCMCache {
+	static final int MAGIC       = 0x434D4350; // "PCMC" little endian
+	static final int VERSION     = 1;
+	static final int HEADER_SIZE = 32;
+
+	private static PCMCache defaultCache;
+
+	private final File   dir;
+	private final String soundbank;
+
+	public PCMCache(File dir, String soundbank) {
+		this.dir       = dir;
+		this.soundbank = soundbank;
+	}
+
+	public static synchronized PCMCache getDefault() {
+		if(defaultCache == null) {
+			String dir = System.getProperty("ch.fhnw.tvver.pcmcache");
+			defaultCache = new PCMCache(
+					dir == null ? new File(new File(System.getProperty("user.home"), ".pcm2midi"), "pcm") : new File(dir), 
+					getDefaultSoundbank());
+		}
+		return defaultCache;
+	}
+
+	/**
+	 * Computes the cache key for a source file.
+	 * 
+	 * @param source The file that gets synthesized.
+	 * @param sampleRate The sample rate of the synthesized audio.
+	 * @param numChannels The channel count of the synthesized audio.
+	 * @param variant Identifies the way the source is rendered, change it whenever the rendering changes.
+	 * @return The key, usable as file name.
+	 * @throws IOException Thrown if the source could not be read.
+	 */
+	public String getKey(File source, float sampleRate, int numChannels, String variant) throws IOException {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			try(RandomAccessFile in = new RandomAccessFile(source, "r")) {
+				FileChannel channel = in.getChannel();
+				ByteBuffer  buffer  = ByteBuffer.allocate(64 * 1024);
+				while(channel.read(buffer) > 0) {
+					buffer.flip();
+					digest.update(buffer);
+					buffer.clear();
+				}
+			}
+			digest.update((sampleRate + ":" + numChannels + ":" + soundbank + ":" + variant).getBytes(StandardCharsets.UTF_8));
+			StringBuilder result = new StringBuilder();
+			for(byte b : digest.digest())
+				result.append(String.format("%02x", b & 0xFF));
+			return result.toString();
+		} catch(NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Opens a cached entry.
+	 * 
+	 * @param key The key from {@link #getKey(File, float, int, String)}.
+	 * @return A source playing the cached samples or <code>null</code> if there is no valid entry.
+	 * @throws IOException Thrown if the entry could not be mapped.
+	 */
+	public FloatBufferAudioSource open(String key) throws IOException {
+		File file = getFile(key);
+		if(!(file.isFile()))
+			return null;
+		try(RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			FileChannel channel = in.getChannel();
+			if(channel.size() < HEADER_SIZE)
+				return null;
+			MappedByteBuffer map = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			map.order(ByteOrder.LITTLE_ENDIAN);
+			if(map.getInt(0) != MAGIC || map.getInt(4) != VERSION)
+				return null;
+			float sampleRate  = map.getFloat(8);
+			int   numChannels = map.getInt(12);
+			int   frameSize   = map.getInt(16);
+			long  numSamples  = map.getLong(20);
+			if(frameSize <= 0 || HEADER_SIZE + numSamples * 4 != channel.size())
+				return null;
+			map.position(HEADER_SIZE);
+			return new FloatBufferAudioSource(map.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer(), sampleRate, numChannels, frameSize);
+		}
+	}
+
+	/**
+	 * Creates a writer which records the frames passing through it and stores them
+	 * under <code>key</code> on {@link PCMCacheWriter#commit()}.
+	 * 
+	 * @param key The key from {@link #getKey(File, float, int, String)}.
+	 * @return The writer, to be added right after the source.
+	 * @throws IOException Thrown if the cache directory is not writable.
+	 */
+	public PCMCacheWriter create(String key) throws IOException {
+		if(!(dir.isDirectory()) && !(dir.mkdirs()))
+			throw new IOException("Can't create cache directory '" + dir + "'");
+		return new PCMCacheWriter(File.createTempFile(key, ".tmp", dir), getFile(key));
+	}
+
+	private File getFile(String key) {
+		return new File(dir, key + ".pcm");
+	}
+
+	private static String getDefaultSoundbank() {
+		String result = System.getProperty("ch.fhnw.tvver.soundbank");
+		if(result != null)
+			return result;
+		try {
+			Soundbank soundbank = MidiSystem.getSynthesizer().getDefaultSoundbank();
+			if(soundbank != null)
+				return soundbank.getName() + "/" + soundbank.getVendor() + "/" + soundbank.getVersion();
+		} catch(Throwable t) {}
+		return "default";
+	}
+}
@@ -0,0 +1,115 @@
+package ch.fhnw.tvver.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import ch.fhnw.ether.audio.AudioFrame;
+import ch.fhnw.ether.audio.IAudioRenderTarget;
+import ch.fhnw.ether.media.AbstractRenderCommand;
+import ch.fhnw.ether.media.RenderCommandException;
+import ch.fhnw.util.Log;
+
+/**
+ * Records the frames passing through it into a {@link PCMCache} entry. The
+ * entry becomes visible only after {@link #commit()}, so interrupted runs
+ * never leave truncated entries behind. Write errors disable the writer but
+ * do not stop the pipeline.
+ */
+public final class PCMCacheWriter extends AbstractRenderCommand<IAudioRenderTarget> {
+	private static final Log log = Log.create();
+
+	private final File             tmp;
+	private final File             file;
+	private final RandomAccessFile out;
+	private final FileChannel      channel;
+	private       ByteBuffer       buffer = ByteBuffer.allocateDirect(4096).order(ByteOrder.LITTLE_ENDIAN);
+	private       float            sampleRate;
+	private       int              numChannels;
+	private       int              frameSize = -1;
+	private       long             numSamples;
+	private       boolean          failed;
+
+	PCMCacheWriter(File tmp, File file) throws IOException {
+		this.tmp     = tmp;
+		this.file    = file;
+		this.out     = new RandomAccessFile(tmp, "rw");
+		this.channel = out.getChannel();
+		this.channel.position(PCMCache.HEADER_SIZE);
+	}
+
+	@Override
+	protected void init(IAudioRenderTarget target) throws RenderCommandException {
+		super.init(target);
+		sampleRate  = target.getSampleRate();
+		numChannels = target.getNumChannels();
+	}
+
+	@Override
+	protected void run(IAudioRenderTarget target) throws RenderCommandException {
+		if(failed) return;
+		AudioFrame frame   = target.getFrame();
+		float[]    samples = frame.samples;
+		if(frameSize < 0)
+			frameSize = samples.length;
+		if(buffer.capacity() < samples.length * 4)
+			buffer = ByteBuffer.allocateDirect(samples.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.clear();
+		buffer.asFloatBuffer().put(samples);
+		buffer.limit(samples.length * 4);
+		try {
+			while(buffer.hasRemaining())
+				channel.write(buffer);
+			numSamples += samples.length;
+		} catch(IOException e) {
+			log.warning(e);
+			abort();
+		}
+	}
+
+	/**
+	 * Completes the entry and makes it visible in the cache.
+	 * 
+	 * @throws IOException Thrown if the entry could not be written.
+	 */
+	public void commit() throws IOException {
+		if(failed) return;
+		try {
+			ByteBuffer header = ByteBuffer.allocate(PCMCache.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(PCMCache.MAGIC);
+			header.putInt(PCMCache.VERSION);
+			header.putFloat(sampleRate);
+			header.putInt(numChannels);
+			header.putInt(Math.max(frameSize, 1));
+			header.putLong(numSamples);
+			header.rewind();
+			channel.write(header, 0);
+			out.close();
+			try {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch(AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			failed = true;
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Discards the entry.
+	 */
+	public void abort() {
+		failed = true;
+		try {
+			out.close();
+		} catch(IOException e) {}
+		tmp.delete();
+	}
+}
@@ -0,0 +1,166 @@
+package ch.fhnw.tvver.audio;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import ch.fhnw.ether.audio.AudioFrame;
+import ch.fhnw.ether.audio.IAudioRenderTarget;
+import ch.fhnw.ether.audio.IAudioSource;
+import ch.fhnw.ether.media.AbstractFrameSource;
+import ch.fhnw.ether.media.IRenderTarget;
+import ch.fhnw.ether.media.RenderCommandException;
+
+/**
+ * An audio source reading raw interleaved little endian PCM from a channel
+ * such as stdin, a FIFO or a socket. 8 bit samples are unsigned, 16, 24 and
+ * 32 bit samples signed integers. Bytes are read into one reused direct
+ * buffer, the samples of every frame are a new array like those of the other
+ * sources since the frame is handed down the pipeline.<br>
+ * <br>
+ * A complete frame is emitted as soon as the first sample frame after it or
+ * the end of stream arrives, so the frame that ends the stream can be marked as last
+ * and no empty frame is ever sent. An empty stream yields a single silent
+ * sample frame. Channels passed to the constructor stay open, those opened
+ * by the factory methods are closed at end of stream.
+ */
+public class RawPCMAudioSource extends AbstractFrameSource implements IAudioSource {
+	private final ReadableByteChannel in;
+	private final float               sampleRate;
+	private final int                 numChannels;
+	private final int                 bytesPerSample;
+	private final int                 frameSize;
+	private final int                 frameBytes;
+	private final ByteBuffer          buffer;
+	private final float               scale;
+	private       boolean             closeAtEnd;
+	private       long                sTime;
+	private       boolean             eos;
+
+	/**
+	 * @param in The channel to read from, blocking reads wait for the next frame.
+	 * @param sampleRate The sample rate in Hz.
+	 * @param numChannels The number of interleaved channels.
+	 * @param bitsPerSample 8, 16, 24 or 32.
+	 * @param frameSize The number of samples (over all channels) per frame.
+	 */
+	public RawPCMAudioSource(ReadableByteChannel in, float sampleRate, int numChannels, int bitsPerSample, int frameSize) {
+		if(bitsPerSample != 8 && bitsPerSample != 16 && bitsPerSample != 24 && bitsPerSample != 32)
+			throw new IllegalArgumentException("Unsupported bits per sample: " + bitsPerSample);
+		if(frameSize <= 0 || frameSize % numChannels != 0)
+			throw new IllegalArgumentException("Frame size " + frameSize + " is not a multiple of " + numChannels + " channels");
+		this.in             = in;
+		this.sampleRate     = sampleRate;
+		this.numChannels    = numChannels;
+		this.bytesPerSample = bitsPerSample / 8;
+		this.frameSize      = frameSize;
+		this.frameBytes     = frameSize * bytesPerSample;
+		// room for a whole frame after the one being completed, so a read never stalls on a full buffer
+		this.buffer         = ByteBuffer.allocateDirect(2 * frameBytes).order(ByteOrder.LITTLE_ENDIAN);
+		this.scale          = 1f / (1L << (bitsPerSample - 1));
+	}
+
+	/**
+	 * @return A source reading standard input.
+	 */
+	public static RawPCMAudioSource stdin(float sampleRate, int numChannels, int bitsPerSample, int frameSize) {
+		RawPCMAudioSource result = new RawPCMAudioSource(new FileInputStream(FileDescriptor.in).getChannel(), sampleRate, numChannels, bitsPerSample, frameSize);
+		result.closeAtEnd = true;
+		return result;
+	}
+
+	/**
+	 * Opens a file or named pipe, which blocks until the writing side is opened.
+	 * 
+	 * @return A source reading <code>path</code>.
+	 * @throws IOException Thrown if the file could not be opened.
+	 */
+	public static RawPCMAudioSource open(Path path, float sampleRate, int numChannels, int bitsPerSample, int frameSize) throws IOException {
+		RawPCMAudioSource result = new RawPCMAudioSource(FileChannel.open(path, StandardOpenOption.READ), sampleRate, numChannels, bitsPerSample, frameSize);
+		result.closeAtEnd = true;
+		return result;
+	}
+
+	@Override
+	protected void run(IRenderTarget<?> target) throws RenderCommandException {
+		try {
+			// a complete sample frame beyond the frame tells whether another frame follows
+			int sampleFrame = bytesPerSample * numChannels;
+			while(buffer.position() < frameBytes + sampleFrame && !(eos))
+				eos = in.read(buffer) < 0;
+			buffer.flip();
+
+			// drop an incomplete sample frame at the end of the stream
+			int     count = Math.min(buffer.remaining(), frameBytes) / sampleFrame * numChannels;
+			float[] frame = new float[count == 0 ? numChannels : count];
+			convert(frame, count);
+			boolean last  = eos && buffer.remaining() < sampleFrame;
+			buffer.compact();
+
+			AudioFrame result = new AudioFrame(sTime, numChannels, sampleRate, frame);
+			sTime += frame.length / numChannels;
+			if(last) {
+				result.setLast(true);
+				if(closeAtEnd) in.close();
+			}
+			((IAudioRenderTarget)target).setFrame(this, result);
+		} catch(IOException e) {
+			throw new RenderCommandException(e);
+		}
+	}
+
+	private void convert(float[] frame, int count) {
+		ByteBuffer buffer = this.buffer;
+		switch(bytesPerSample) {
+		case 1:
+			for(int i = 0; i < count; i++)
+				frame[i] = ((buffer.get() & 0xFF) - 128) * scale;
+			break;
+		case 2:
+			for(int i = 0; i < count; i++)
+				frame[i] = buffer.getShort() * scale;
+			break;
+		case 3:
+			for(int i = 0; i < count; i++) {
+				int lo = buffer.getShort() & 0xFFFF;
+				frame[i] = (buffer.get() << 16 | lo) * scale;
+			}
+			break;
+		case 4:
+			for(int i = 0; i < count; i++)
+				frame[i] = buffer.getInt() * scale;
+			break;
+		}
+	}
+
+	@Override
+	public float getSampleRate() {
+		return sampleRate;
+	}
+
+	@Override
+	public int getNumChannels() {
+		return numChannels;
+	}
+
+	@Override
+	public long getLengthInFrames() {
+		return FRAMECOUNT_UNKNOWN;
+	}
+
+	@Override
+	public double getLengthInSeconds() {
+		return LENGTH_UNKNOWN;
+	}
+
+	@Override
+	public float getFrameRate() {
+		return (numChannels * sampleRate) / frameSize;
+	}
+}
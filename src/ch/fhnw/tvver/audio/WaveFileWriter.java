@@ -0,0 +1,117 @@
+package ch.fhnw.tvver.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import ch.fhnw.ether.audio.IAudioRenderTarget;
+import ch.fhnw.ether.media.AbstractRenderCommand;
+import ch.fhnw.ether.media.RenderCommandException;
+
+/**
+ * Streams the frames passing through it into a 16 bit PCM WAV file. Samples
+ * are converted into a reused buffer and written through a
+ * {@link FileChannel} as they are produced, the RIFF header is patched with
+ * the final sizes on {@link #close()}. Memory use does not depend on the
+ * length of the track.
+ */
+public final class WaveFileWriter extends AbstractRenderCommand<IAudioRenderTarget> {
+	private static final int  HEADER_SIZE      = 44;
+	private static final int  BYTES_PER_SAMPLE = 2;
+	private static final long MAX_DATA_SIZE    = 0xFFFFFFFFL - HEADER_SIZE;
+
+	private final File             file;
+	private       RandomAccessFile out;
+	private       FileChannel      channel;
+	private       ByteBuffer       buffer = ByteBuffer.allocateDirect(8192).order(ByteOrder.LITTLE_ENDIAN);
+	private       int              sampleRate;
+	private       int              numChannels;
+	private       long             dataSize;
+
+	public WaveFileWriter(File file) {
+		this.file = file;
+	}
+
+	@Override
+	protected void init(IAudioRenderTarget target) throws RenderCommandException {
+		super.init(target);
+		try {
+			close();
+			sampleRate  = (int)target.getSampleRate();
+			numChannels = target.getNumChannels();
+			dataSize    = 0;
+			out         = new RandomAccessFile(file, "rw");
+			out.setLength(0);
+			channel     = out.getChannel();
+			channel.write(header(), 0);
+			channel.position(HEADER_SIZE);
+		} catch(IOException e) {
+			throw new RenderCommandException(e);
+		}
+	}
+
+	@Override
+	protected void run(IAudioRenderTarget target) throws RenderCommandException {
+		if(channel == null) return;
+		float[] samples = target.getFrame().samples;
+		int     size    = samples.length * BYTES_PER_SAMPLE;
+		if(dataSize + size > MAX_DATA_SIZE)
+			return;
+		if(buffer.capacity() < size)
+			buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.clear();
+		for(float sample : samples)
+			buffer.putShort((short)(Math.max(-1f, Math.min(1f, sample)) * Short.MAX_VALUE));
+		buffer.flip();
+		try {
+			while(buffer.hasRemaining())
+				channel.write(buffer);
+			dataSize += size;
+		} catch(IOException e) {
+			throw new RenderCommandException(e);
+		}
+	}
+
+	/**
+	 * Patches the header with the final sizes and closes the file.
+	 * 
+	 * @throws IOException Thrown if the file could not be written.
+	 */
+	public void close() throws IOException {
+		if(channel == null) return;
+		try {
+			channel.write(header(), 0);
+		} finally {
+			out.close();
+			out     = null;
+			channel = null;
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	private ByteBuffer header() {
+		int        blockAlign = numChannels * BYTES_PER_SAMPLE;
+		ByteBuffer result     = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		result.put(new byte[] {'R', 'I', 'F', 'F'});
+		result.putInt((int)(HEADER_SIZE - 8 + dataSize));
+		result.put(new byte[] {'W', 'A', 'V', 'E'});
+		result.put(new byte[] {'f', 'm', 't', ' '});
+		result.putInt(16);
+		result.putShort((short)1); // PCM
+		result.putShort((short)numChannels);
+		result.putInt(sampleRate);
+		result.putInt(sampleRate * blockAlign);
+		result.putShort((short)blockAlign);
+		result.putShort((short)(8 * BYTES_PER_SAMPLE));
+		result.put(new byte[] {'d', 'a', 't', 'a'});
+		result.putInt((int)dataSize);
+		result.flip();
+		return result;
+	}
+}
@@ -0,0 +1,114 @@
+package ch.fhnw.tvver.midi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import javax.sound.midi.ShortMessage;
+
+import ch.fhnw.tvver.NoteListener;
+
+/**
+ * Records detected notes and writes them as format 0 Standard MIDI File.
+ * Events are appended to two primitive arrays (time and packed message), no
+ * {@link javax.sound.midi.Sequence} is built. The file is streamed through a
+ * reused buffer and the track length is patched in afterwards.<br>
+ * <br>
+ * The file uses 500 ticks per quarter note at the default tempo of 120 bpm,
+ * so one tick is one millisecond.
+ */
+public final class MidiFileRecorder implements NoteListener {
+	private static final int  TICKS_PER_QUARTER = 500;
+	private static final long US_PER_TICK       = 1000;
+	private static final int  CHANNEL           = 0;
+
+	private long[] times    = new long[1024];
+	private int[]  messages = new int[1024];
+	private int    size;
+
+	@Override
+	public void note(long time, int key, int velocity, int kind) {
+		if(size == times.length) {
+			times    = Arrays.copyOf(times,    size * 2);
+			messages = Arrays.copyOf(messages, size * 2);
+		}
+		int status = kind == NoteListener.NOTE_OFF ? ShortMessage.NOTE_OFF : ShortMessage.NOTE_ON;
+		times[size]    = time;
+		messages[size] = status | CHANNEL | key << 8 | (kind == NoteListener.NOTE_OFF ? 0 : velocity) << 16;
+		size++;
+	}
+
+	/**
+	 * @return The number of recorded events.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Writes the recorded events. Times are relative to the start of the
+	 * analysed track, so the file lines up with the input.
+	 * 
+	 * @param file The file to write.
+	 * @throws IOException Thrown if the file could not be written.
+	 */
+	public void write(File file) throws IOException {
+		try(RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+			out.setLength(0);
+			FileChannel channel = out.getChannel();
+			ByteBuffer  buffer  = ByteBuffer.allocate(8192).order(ByteOrder.BIG_ENDIAN);
+
+			buffer.put(new byte[] {'M', 'T', 'h', 'd'});
+			buffer.putInt(6);
+			buffer.putShort((short)0); // format 0
+			buffer.putShort((short)1); // one track
+			buffer.putShort((short)TICKS_PER_QUARTER);
+			buffer.put(new byte[] {'M', 'T', 'r', 'k'});
+			int  lengthPos   = buffer.position();
+			buffer.putInt(0);
+			long trackStart  = buffer.position();
+
+			long tick = 0;
+			for(int i = 0; i < size; i++) {
+				if(buffer.remaining() < 8) 
+					flush(channel, buffer);
+				long eventTick = Math.max(tick, times[i] / US_PER_TICK);
+				putVarLen(buffer, eventTick - tick);
+				tick = eventTick;
+				int message = messages[i];
+				buffer.put((byte)message);
+				buffer.put((byte)(message >> 8));
+				buffer.put((byte)(message >> 16));
+			}
+			if(buffer.remaining() < 4) 
+				flush(channel, buffer);
+			buffer.put(new byte[] {0x00, (byte)0xFF, 0x2F, 0x00}); // end of track
+			flush(channel, buffer);
+
+			long trackLength = channel.position() - trackStart;
+			buffer.putInt((int)trackLength);
+			buffer.flip();
+			channel.write(buffer, lengthPos);
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	private static void putVarLen(ByteBuffer buffer, long value) {
+		int  shift = 21;
+		while(shift > 0 && (value >> shift) == 0)
+			shift -= 7;
+		for(; shift > 0; shift -= 7)
+			buffer.put((byte)(0x80 | ((value >> shift) & 0x7F)));
+		buffer.put((byte)(value & 0x7F));
+	}
+}
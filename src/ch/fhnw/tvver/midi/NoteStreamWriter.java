@@ -0,0 +1,48 @@
+package ch.fhnw.tvver.midi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import ch.fhnw.tvver.NoteListener;
+
+/**
+ * Writes detected notes as text lines to a stream, one line per event:
+ * <code>&lt;time in µs&gt; on|off &lt;key&gt; &lt;velocity&gt;</code>, separated
+ * by tabs. Every line is flushed at once, so a reader sees a note as soon as it
+ * is detected. The first write error is kept and stops further output.
+ */
+public final class NoteStreamWriter implements NoteListener {
+	private final Writer        out;
+	private final StringBuilder line = new StringBuilder(32);
+	private       IOException   error;
+
+	public NoteStreamWriter(OutputStream out) {
+		this.out = new OutputStreamWriter(out, StandardCharsets.US_ASCII);
+	}
+
+	@Override
+	public void note(long time, int key, int velocity, int kind) {
+		if(error != null) return;
+		line.setLength(0);
+		line.append(time).append('\t')
+		.append(kind == NoteListener.NOTE_OFF ? "off" : "on").append('\t')
+		.append(key).append('\t')
+		.append(velocity).append('\n');
+		try {
+			out.append(line);
+			out.flush();
+		} catch(IOException e) {
+			error = e;
+		}
+	}
+
+	/**
+	 * @return The first write error or <code>null</code>.
+	 */
+	public IOException getError() {
+		return error;
+	}
+}
@@ -0,0 +1,142 @@
+package ch.fhnw.tvver.midi;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+/**
+ * Streaming reader for Standard MIDI Files. The file is memory mapped and the
+ * channel events of every track are handed to a handler in file order, without
+ * building a sequence or playing anything. Meta and system exclusive events are
+ * skipped, running status is followed like <code>javax.sound.midi</code> does.
+ */
+public final class SMFReader {
+	private static final int MTHD = 0x4D546864;
+	private static final int MTRK = 0x4D54726B;
+
+	/**
+	 * Receives the channel events of a file.
+	 */
+	public interface Handler {
+		/**
+		 * @param track  Index of the track chunk, starting at 0.
+		 * @param tick   Absolute time in ticks since the start of the track.
+		 * @param status Status byte including the channel.
+		 * @param data1  First data byte.
+		 * @param data2  Second data byte or 0 for program change and channel pressure.
+		 */
+		void event(int track, long tick, int status, int data1, int data2);
+	}
+
+	private SMFReader() {}
+
+	/**
+	 * Reads all channel events of a file.
+	 *
+	 * @return The division (ticks per quarter note or SMPTE) of the header.
+	 */
+	public static int read(File file, Handler handler) throws IOException, InvalidMidiDataException {
+		try(FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+			try {
+				return read(buffer, handler);
+			} catch(InvalidMidiDataException e) {
+				throw new InvalidMidiDataException(file + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Reads all channel events from the position of the buffer on. The buffer
+	 * must be in big endian order, which is the default.
+	 *
+	 * @return The division (ticks per quarter note or SMPTE) of the header.
+	 */
+	public static int read(ByteBuffer buffer, Handler handler) throws InvalidMidiDataException {
+		try {
+			if(buffer.getInt() != MTHD)
+				throw new InvalidMidiDataException("not a standard MIDI file");
+			int length   = buffer.getInt();
+			int start    = buffer.position();
+			if(length < 6 || length > buffer.remaining())
+				throw new InvalidMidiDataException("invalid header length " + length);
+			buffer.getShort(); // format
+			int tracks   = buffer.getShort() & 0xFFFF;
+			int division = buffer.getShort() & 0xFFFF;
+			buffer.position(start + length);
+
+			int track = 0;
+			while(track < tracks) {
+				if(buffer.remaining() < 8)
+					throw new InvalidMidiDataException("missing track " + track + " of " + tracks);
+				int type = buffer.getInt();
+				length   = buffer.getInt();
+				if(length < 0 || length > buffer.remaining())
+					throw new InvalidMidiDataException("truncated chunk in track " + track);
+				int end  = buffer.position() + length;
+				if(type == MTRK)
+					readTrack(buffer, end, track++, handler);
+				// unknown chunks are skipped as the specification requires
+				buffer.position(end);
+			}
+			return division;
+		} catch(BufferUnderflowException e) {
+			throw new InvalidMidiDataException("unexpected end of file");
+		}
+	}
+
+	private static void readTrack(ByteBuffer buffer, int end, int track, Handler handler) throws InvalidMidiDataException {
+		long tick    = 0;
+		int  running = 0;
+		while(buffer.position() < end) {
+			tick += readVarInt(buffer);
+			int status = buffer.get() & 0xFF;
+			if(status < 0x80) {
+				if(running == 0)
+					throw new InvalidMidiDataException("data byte without status in track " + track);
+				// running status, the byte just read is already data1
+				dispatch(buffer, handler, track, tick, running, status);
+			} else if(status == 0xFF) {
+				buffer.get(); // meta type
+				skip(buffer, readVarInt(buffer));
+			} else if(status == 0xF0 || status == 0xF7) {
+				skip(buffer, readVarInt(buffer));
+			} else if(status < 0xF0) {
+				running = status;
+				dispatch(buffer, handler, track, tick, status, buffer.get() & 0x7F);
+			} else {
+				throw new InvalidMidiDataException("invalid status " + Integer.toHexString(status) + " in track " + track);
+			}
+			if(buffer.position() > end)
+				throw new InvalidMidiDataException("event past end of track " + track);
+		}
+	}
+
+	private static void dispatch(ByteBuffer buffer, Handler handler, int track, long tick, int status, int data1) {
+		int command = status & 0xF0;
+		int data2   = command == 0xC0 || command == 0xD0 ? 0 : buffer.get() & 0x7F;
+		handler.event(track, tick, status, data1 & 0x7F, data2);
+	}
+
+	private static void skip(ByteBuffer buffer, int length) throws InvalidMidiDataException {
+		if(length > buffer.remaining())
+			throw new InvalidMidiDataException("event length " + length + " past end of file");
+		buffer.position(buffer.position() + length);
+	}
+
+	private static int readVarInt(ByteBuffer buffer) throws InvalidMidiDataException {
+		int result = 0;
+		for(int i = 0; i < 4; i++) {
+			int b = buffer.get() & 0xFF;
+			result = (result << 7) | (b & 0x7F);
+			if(b < 0x80) return result;
+		}
+		throw new InvalidMidiDataException("variable length quantity longer than four bytes");
+	}
+}
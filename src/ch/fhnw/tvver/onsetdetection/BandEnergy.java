@@ -0,0 +1,130 @@
+package ch.fhnw.tvver.onsetdetection;
+
+import ch.fhnw.ether.audio.IAudioRenderTarget;
+import ch.fhnw.ether.audio.fx.FFT;
+import ch.fhnw.ether.media.AbstractRenderCommand;
+import ch.fhnw.ether.media.RenderCommandException;
+import ch.fhnw.tvver.pitchdetection.YinKernels;
+
+/**
+ * Power of several frequency bands of the current FFT spectrum. The bin
+ * range of each band is resolved with {@link FFT#f2idx(float)} only when the
+ * sample rate or the spectrum size changes. If the bands together cover
+ * no more bins than the spectrum has, such as the default disjoint bands,
+ * each band is summed with {@link YinKernels#sum(float[], int, int)}, which
+ * the vector kernels run with SIMD. Otherwise all bands are read from one
+ * prefix sum over the power spectrum. Either way a frame costs at most one
+ * pass over the spectrum, however many and however wide or overlapping the
+ * bands are. A band covers the bins from the index of its
+ * lower to the index of its upper frequency, both inclusive, like
+ * {@link FFT#power(float, float)}.<br>
+ * <br>
+ * Either add it to the program after the FFT or call {@link #update(float)}
+ * from the detector that needs the energies.
+ */
+public final class BandEnergy extends AbstractRenderCommand<IAudioRenderTarget> {
+
+    private final FFT fft;
+    private final float[] bandLimits;
+    private final int numBands;
+    private final int[] from;
+    private final int[] to;
+    private final float[] power;
+    private final YinKernels kernels = YinKernels.DEFAULT;
+    private boolean perBand;
+    private double[] prefix = new double[1];
+    private float sampleRate = -1;
+    private int spectrumSize = -1;
+
+    /**
+     * @param fft the FFT the spectrum is taken from
+     * @param bandLimits pairs of lower and upper frequency in Hz
+     */
+    public BandEnergy(FFT fft, float... bandLimits) {
+        if (bandLimits.length < 2 || bandLimits.length % 2 != 0) {
+            throw new IllegalArgumentException("Band limits must be pairs of lower and upper frequency");
+        }
+        this.fft = fft;
+        this.bandLimits = bandLimits.clone();
+        this.numBands = bandLimits.length / 2;
+        this.from = new int[this.numBands];
+        this.to = new int[this.numBands];
+        this.power = new float[this.numBands];
+    }
+
+    @Override
+    protected void run(IAudioRenderTarget target) throws RenderCommandException {
+        this.update(target.getSampleRate());
+    }
+
+    /**
+     * Computes the band powers of the current spectrum of the FFT.
+     * 
+     * @param sampleRate the sample rate of the analysed audio
+     */
+    public void update(float sampleRate) {
+        float[] spectrum = this.fft.power();
+        if (spectrum.length != this.spectrumSize || sampleRate != this.sampleRate) {
+            this.resolve(sampleRate, spectrum.length);
+        }
+
+        if (this.perBand) {
+            for (int band = 0; band < this.numBands; band++) {
+                int lo = this.from[band];
+                int hi = this.to[band];
+                this.power[band] = hi < lo ? 0f : (float) this.kernels.sum(spectrum, lo, hi + 1);
+            }
+            return;
+        }
+
+        double[] prefix = this.prefix;
+        double sum = 0;
+        for (int i = 0; i < spectrum.length; i++) {
+            sum += spectrum[i];
+            prefix[i + 1] = sum;
+        }
+
+        for (int band = 0; band < this.numBands; band++) {
+            int lo = this.from[band];
+            int hi = this.to[band];
+            this.power[band] = hi < lo ? 0f : (float) (prefix[hi + 1] - prefix[lo]);
+        }
+    }
+
+    private void resolve(float sampleRate, int spectrumSize) {
+        this.sampleRate = sampleRate;
+        this.spectrumSize = spectrumSize;
+        if (this.prefix.length != spectrumSize + 1) {
+            this.prefix = new double[spectrumSize + 1];
+        }
+        int bins = 0;
+        for (int band = 0; band < this.numBands; band++) {
+            this.from[band] = Math.max(0, this.fft.f2idx(this.bandLimits[band * 2]));
+            this.to[band] = Math.min(spectrumSize - 1, this.fft.f2idx(this.bandLimits[band * 2 + 1]));
+            bins += Math.max(0, this.to[band] - this.from[band] + 1);
+        }
+        this.perBand = bins <= spectrumSize;
+    }
+
+    public int getNumBands() {
+        return this.numBands;
+    }
+
+    /**
+     * @return the power of <code>band</code> computed by the last {@link #update(float)}
+     */
+    public float get(int band) {
+        return this.power[band];
+    }
+
+    /**
+     * Copies the powers of all bands.
+     * 
+     * @param result array of at least {@link #getNumBands()} elements
+     * @return <code>result</code>
+     */
+    public float[] get(float[] result) {
+        System.arraycopy(this.power, 0, result, 0, this.numBands);
+        return result;
+    }
+}
@@ -1,8 +1,5 @@
 package ch.fhnw.tvver.onsetdetection;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import ch.fhnw.ether.audio.AudioUtilities;
 import ch.fhnw.ether.audio.IAudioRenderTarget;
 import ch.fhnw.ether.audio.fx.FFT;
@@ -23,54 +20,143 @@ import ch.fhnw.util.color.RGB;
  * </ul>
  */
 public class OnSetDetection extends AbstractRenderCommand<IAudioRenderTarget> implements IPlotable {
+
+    /**
+     * The way the adaptive threshold of a band is derived from its recent flux.
+     */
+    public enum ThresholdMode {
+        /** Twice the mean of the history, which includes the current frame. */
+        MEAN,
+        /** Twice the median of the previous frames, causal and robust against single peaks. */
+        MEDIAN
+    }
    
+    /** Default pairs of lower and upper band frequency. */
     public static final float[] bands = { 80, 4000, 4000, 10000, 10000, 16000 };
-    private FFT fft;
+    /** Default flux above the mean of the first band required if all other bands are silent. */
+    public static final float FLUX_THRESHOLD = 40;
+    /** Default flux of the first band below which a frame is ignored. */
+    public static final float MIN_FLUX = 5f;
+    /** Default energy increase from the previous frame required for an onset. */
+    public static final double ENERGY_RISE = 0.08;
+    /** Default number of previous frames the threshold is taken over. */
+    public static final int THRESHOLD_FRAMES = 5;
     private PitchDetection pitchDetection;
+    private final BandEnergy bandEnergy;
+    private final int numBands;
+    private final float fluxThreshold;
+    private final float minFlux;
+    private final double energyRise;
+    private final ThresholdMode thresholdMode;
         
     public boolean tone = false;
     
-    private List<Float[]> spectralFlux = new ArrayList<>();
-    private float[] spectrum = new float[3];
-    private float[] last_spectrum = new float[3];
+    private final SpectralFluxHistory spectralFlux;
+    private final SlidingMedian[] medians;
+    private final float[] bandPowers;
+    private float[] spectrum;
+    private float[] last_spectrum;
+    private final float[] flux;
+    private final float[] mean;
     private float energy = 0f;
     private float last_energy = 0f;
-    int idx = 0;
     
     public OnSetDetection(FFT fft, PitchDetection pitchDetection) {
+        this(fft, pitchDetection, bands, FLUX_THRESHOLD, MIN_FLUX, ENERGY_RISE);
+    }
+
+    /**
+     * @param bandLimits pairs of lower and upper frequency, the first band is the one the pitch is expected in
+     * @param fluxThreshold flux above the mean of the first band required if all other bands are silent
+     * @param minFlux flux of the first band below which a frame is ignored
+     * @param energyRise energy increase from the previous frame required for an onset
+     */
+    public OnSetDetection(FFT fft, PitchDetection pitchDetection, float[] bandLimits, float fluxThreshold, float minFlux, double energyRise) {
+        this(fft, pitchDetection, bandLimits, fluxThreshold, minFlux, energyRise, ThresholdMode.MEAN, THRESHOLD_FRAMES);
+    }
+
+    /**
+     * @param bandLimits pairs of lower and upper frequency, the first band is the one the pitch is expected in
+     * @param fluxThreshold flux above the mean of the first band required if all other bands are silent
+     * @param minFlux flux of the first band below which a frame is ignored
+     * @param energyRise energy increase from the previous frame required for an onset
+     * @param thresholdMode how the threshold is derived from the recent flux
+     * @param thresholdFrames number of previous frames the threshold is taken over
+     */
+    public OnSetDetection(FFT fft, PitchDetection pitchDetection, float[] bandLimits, float fluxThreshold, float minFlux, double energyRise, 
+            ThresholdMode thresholdMode, int thresholdFrames) {
         fft.addLast(this);
-        this.fft = fft;
         this.pitchDetection = pitchDetection;
+        this.bandEnergy = new BandEnergy(fft, bandLimits);
+        this.numBands = this.bandEnergy.getNumBands();
+        this.fluxThreshold = fluxThreshold;
+        this.minFlux = minFlux;
+        this.energyRise = energyRise;
+        this.thresholdMode = thresholdMode;
+        if (thresholdMode == ThresholdMode.MEDIAN) {
+            this.spectralFlux = null;
+            this.medians = new SlidingMedian[this.numBands];
+            for (int i = 0; i < this.numBands; i++) {
+                this.medians[i] = new SlidingMedian(thresholdFrames);
+            }
+        } else {
+            this.spectralFlux = new SpectralFluxHistory(this.numBands, thresholdFrames + 1);
+            this.medians = null;
+        }
+        this.bandPowers = new float[this.numBands];
+        this.spectrum = new float[this.numBands];
+        this.last_spectrum = new float[this.numBands];
+        this.flux = new float[this.numBands];
+        this.mean = new float[this.numBands];
     }
 
     @Override
     protected void run(IAudioRenderTarget target) throws RenderCommandException {
+        this.bandEnergy.update(target.getSampleRate());
+        this.process(this.bandEnergy.get(this.bandPowers), AudioUtilities.energy(target.getFrame().samples));
+    }
+
+    /**
+     * Runs the flux and threshold decision of one frame.
+     * 
+     * @param bandPowers the power of every band in this frame
+     * @param energy the energy of this frame
+     */
+    void process(float[] bandPowers, float energy) {
         this.last_energy = this.energy;
-        this.energy = AudioUtilities.energy(target.getFrame().samples);
+        this.energy = energy;
        
-        for(int i = 0; i < 7; i++) this.clear();
+        this.clear();
         
-        // Copy last spectrum to get a history for comparing
-        System.arraycopy(this.spectrum, 0, this.last_spectrum, 0, this.spectrum.length);
-        for(int i=0; i < bands.length/2; i++) {
-            this.spectrum[i] = this.fft.power(bands[i*2], bands[i*2+1]);
-        }
+        // Swap with last spectrum to get a history for comparing
+        float[] tmp = this.last_spectrum;
+        this.last_spectrum = this.spectrum;
+        this.spectrum = tmp;
+        System.arraycopy(bandPowers, 0, this.spectrum, 0, this.numBands);
         
         // Differenz zwischen diesem FFT und vorherigen
-        Float[] flux = this.calculateFlux();
+        float[] flux = this.calculateFlux();
         
-        // add to spectralFulx to calculate Treshhold
-        this.spectralFlux.add(flux);
+        float[] mean;
+        if (this.thresholdMode == ThresholdMode.MEDIAN) {
+            // threshold from the previous frames only, then add this one
+            mean = this.calculateMedianThreshold();
+            for (int i = 0; i < this.numBands; i++) {
+                this.medians[i].add(flux[i]);
+            }
+        } else {
+            // add to spectralFulx to calculate Treshhold
+            this.spectralFlux.add(flux);
 
-        // Durchschnittswert für die letzten 5 FFT
-        Float[] mean = this.calcualteTreshhold(Math.max(0, this.idx - 5),
-                Math.min(this.spectralFlux.size() - 1, this.idx + 5));
+            // Durchschnittswert für die letzten 5 FFT
+            mean = this.calcualteTreshhold();
+        }
 
-        if ((flux[1] == 0f && flux[2] == 0f && flux[0] - mean[0] < 40) || (flux[0] < 5f)) {
+        if ((this.upperBandsSilent(flux) && flux[0] - mean[0] < this.fluxThreshold) || (flux[0] < this.minFlux)) {
             // TODO: Check if ignore is the best part
             // System.out.println("IGNORE SAMPLES");
         } else {
-            if (flux[0] > mean[0] && flux[1] >= mean[1] && flux[2] >= mean[2] && this.energyRising()) {
+            if (flux[0] > mean[0] && this.upperBandsAtLeast(flux, mean) && this.energyRising()) {
                 this.tone = true;
                 this.pitchDetection.detectPitch();
                 this.bar(1, RGB.RED);
@@ -78,43 +164,73 @@ public class OnSetDetection extends AbstractRenderCommand<IAudioRenderTarget> im
                 this.tone = false;
             }
         }
+    }
 
-        this.idx++;
-        this.clear();
+    /**
+     * @return the threshold of <code>band</code> the last frame was compared against
+     */
+    float getThreshold(int band) {
+        return this.mean[band];
+    }
 
+    /**
+     * @return the band powers of the current frame, shared with other detectors
+     */
+    public BandEnergy getBandEnergy() {
+        return this.bandEnergy;
     }
 
-    private Float[] calculateFlux() {
-        Float[] flux = new Float[] {0f, 0f, 0f};
-        for (int i = 0; i < 3; i++) {
+    private float[] calculateFlux() {
+        for (int i = 0; i < this.numBands; i++) {
             float value = this.spectrum[i] - this.last_spectrum[i];
-            flux[i] = (float) (value < 0 ? 0 : Math.round(value*10.0)/10.0);
+            this.flux[i] = (float) (value < 0 ? 0 : Math.round(value*10.0)/10.0);
         }
-        return flux;
+        return this.flux;
     }
     
-    private Float[] calcualteTreshhold(int start, int end) {
-        Float[] mean = new Float[] {0f, 0f, 0f};
-      
-        // Go over all spectralflux entries => run called
-        for (int i = start; i <= end; i++) {
-            // Go over the diffrent fft sizes
-            mean[0] += this.spectralFlux.get(i)[0];
-            mean[1] += this.spectralFlux.get(i)[1];
-            mean[2] += this.spectralFlux.get(i)[2];
-        }
-                
-        for(int i=0; i < 3; i++) {
-            float value = mean[i] / (end - start);
-            mean[i] = (float) (Math.round(value*10.0)/10.0);
-            mean[i] *= 2f;          
+    private float[] calcualteTreshhold() {
+        // Running sums over the history, divided by (end - start) as the
+        // window was indexed before
+        int frames = this.spectralFlux.size() - 1;
+        
+        for(int i=0; i < this.numBands; i++) {
+            float value = this.spectralFlux.sum(i) / frames;
+            this.mean[i] = (float) (Math.round(value*10.0)/10.0);
+            this.mean[i] *= 2f;          
         }
-        return mean;
+        return this.mean;
         
     }
     
+    private float[] calculateMedianThreshold() {
+        for (int i = 0; i < this.numBands; i++) {
+            SlidingMedian median = this.medians[i];
+            if (median.size() == 0) {
+                // no history yet, like the mean of an empty window nothing exceeds it
+                this.mean[i] = Float.POSITIVE_INFINITY;
+            } else {
+                this.mean[i] = (float) (Math.round(median.median() * 10.0) / 10.0) * 2f;
+            }
+        }
+        return this.mean;
+    }
+
+    private boolean upperBandsSilent(float[] flux) {
+        for (int i = 1; i < this.numBands; i++) {
+            if (flux[i] != 0f) return false;
+        }
+        return true;
+    }
+
+    private boolean upperBandsAtLeast(float[] flux, float[] mean) {
+        for (int i = 1; i < this.numBands; i++) {
+            if (flux[i] < mean[i]) return false;
+        }
+        return true;
+    }
+
     private boolean energyRising() {
-        return this.last_energy + 0.08 < this.energy; 
+        return this.last_energy + this.energyRise < this.energy; 
     }
 
 }
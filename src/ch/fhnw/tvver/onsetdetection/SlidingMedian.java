@@ -0,0 +1,182 @@
+package ch.fhnw.tvver.onsetdetection;
+
+/**
+ * Median of the last values of a stream. The window is split into a max-heap
+ * holding the lower and a min-heap holding the upper half. Both heaps store
+ * ring buffer slots and every slot knows its heap position, so the oldest
+ * value is replaced in place. Adding a value is O(log w), reading the
+ * median O(1), and all storage is allocated up front in primitive arrays.
+ */
+public final class SlidingMedian {
+
+    private final int capacity;
+    private final float[] values;
+    // heap position of every slot, lower half >= 0, upper half encoded as -1 - position
+    private final int[] positions;
+    private final int[] lower;
+    private final int[] upper;
+    private int lowerSize = 0;
+    private int upperSize = 0;
+    private int head = 0;
+    private int size = 0;
+
+    /**
+     * @param capacity number of values the median is taken over
+     */
+    public SlidingMedian(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.values = new float[capacity];
+        this.positions = new int[capacity];
+        this.lower = new int[(capacity + 1) / 2];
+        this.upper = new int[capacity / 2];
+    }
+
+    /**
+     * Adds a value, replacing the oldest one if the window is full.
+     */
+    public void add(float value) {
+        int slot = this.head;
+        if (++this.head == this.capacity) {
+            this.head = 0;
+        }
+        this.values[slot] = value;
+        if (this.size < this.capacity) {
+            this.size++;
+            if (this.lowerSize <= this.upperSize) {
+                this.lower[this.lowerSize] = slot;
+                this.positions[slot] = this.lowerSize;
+                siftUpLower(this.lowerSize++);
+            } else {
+                this.upper[this.upperSize] = slot;
+                this.positions[slot] = -1 - this.upperSize;
+                siftUpUpper(this.upperSize++);
+            }
+        } else {
+            int pos = this.positions[slot];
+            if (pos >= 0) {
+                siftDownLower(siftUpLower(pos));
+            } else {
+                siftDownUpper(siftUpUpper(-1 - pos));
+            }
+        }
+        // a single changed value can only misorder the two roots
+        if (this.upperSize > 0 && this.values[this.lower[0]] > this.values[this.upper[0]]) {
+            int l = this.lower[0];
+            int u = this.upper[0];
+            this.lower[0] = u;
+            this.positions[u] = 0;
+            this.upper[0] = l;
+            this.positions[l] = -1;
+            siftDownLower(0);
+            siftDownUpper(0);
+        }
+    }
+
+    /**
+     * @return the median of the window, the mean of the two middle values for
+     *         an even count, {@link Float#NaN} if empty
+     */
+    public float median() {
+        if (this.size == 0) {
+            return Float.NaN;
+        }
+        float low = this.values[this.lower[0]];
+        return this.lowerSize > this.upperSize ? low : (low + this.values[this.upper[0]]) * 0.5f;
+    }
+
+    /**
+     * @return the number of values in the window
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public int capacity() {
+        return this.capacity;
+    }
+
+    private int siftUpLower(int pos) {
+        int slot = this.lower[pos];
+        float value = this.values[slot];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            int p = this.lower[parent];
+            if (this.values[p] >= value) {
+                break;
+            }
+            this.lower[pos] = p;
+            this.positions[p] = pos;
+            pos = parent;
+        }
+        this.lower[pos] = slot;
+        this.positions[slot] = pos;
+        return pos;
+    }
+
+    private void siftDownLower(int pos) {
+        int slot = this.lower[pos];
+        float value = this.values[slot];
+        for (;;) {
+            int child = 2 * pos + 1;
+            if (child >= this.lowerSize) {
+                break;
+            }
+            if (child + 1 < this.lowerSize && this.values[this.lower[child + 1]] > this.values[this.lower[child]]) {
+                child++;
+            }
+            int c = this.lower[child];
+            if (this.values[c] <= value) {
+                break;
+            }
+            this.lower[pos] = c;
+            this.positions[c] = pos;
+            pos = child;
+        }
+        this.lower[pos] = slot;
+        this.positions[slot] = pos;
+    }
+
+    private int siftUpUpper(int pos) {
+        int slot = this.upper[pos];
+        float value = this.values[slot];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            int p = this.upper[parent];
+            if (this.values[p] <= value) {
+                break;
+            }
+            this.upper[pos] = p;
+            this.positions[p] = -1 - pos;
+            pos = parent;
+        }
+        this.upper[pos] = slot;
+        this.positions[slot] = -1 - pos;
+        return pos;
+    }
+
+    private void siftDownUpper(int pos) {
+        int slot = this.upper[pos];
+        float value = this.values[slot];
+        for (;;) {
+            int child = 2 * pos + 1;
+            if (child >= this.upperSize) {
+                break;
+            }
+            if (child + 1 < this.upperSize && this.values[this.upper[child + 1]] < this.values[this.upper[child]]) {
+                child++;
+            }
+            int c = this.upper[child];
+            if (this.values[c] >= value) {
+                break;
+            }
+            this.upper[pos] = c;
+            this.positions[c] = -1 - pos;
+            pos = child;
+        }
+        this.upper[pos] = slot;
+        this.positions[slot] = -1 - pos;
+    }
+}
@@ -0,0 +1,97 @@
+package ch.fhnw.tvver.onsetdetection;
+
+/**
+ * Fixed capacity history of the spectral flux of several bands. Values are
+ * stored in a primitive ring buffer and a running sum per band is kept, so
+ * adding a frame and reading the sum over the history are O(1) and the
+ * memory does not grow with the length of the input.
+ */
+public final class SpectralFluxHistory {
+
+    private final int bands;
+    private final int capacity;
+    private final float[] values;
+    private final double[] sums;
+    private int head = 0;
+    private int size = 0;
+
+    /**
+     * @param bands number of values per frame
+     * @param capacity number of frames kept
+     */
+    public SpectralFluxHistory(int bands, int capacity) {
+        this.bands = bands;
+        this.capacity = capacity;
+        this.values = new float[bands * capacity];
+        this.sums = new double[bands];
+    }
+
+    /**
+     * Adds the flux of one frame, dropping the oldest frame if the history is
+     * full.
+     * 
+     * @param flux one value per band
+     */
+    public void add(float[] flux) {
+        int offset = this.head * this.bands;
+        boolean full = this.size == this.capacity;
+        for (int band = 0; band < this.bands; band++) {
+            if (full) {
+                this.sums[band] -= this.values[offset + band];
+            }
+            this.values[offset + band] = flux[band];
+            this.sums[band] += flux[band];
+        }
+        if (!full) {
+            this.size++;
+        }
+        if (++this.head == this.capacity) {
+            this.head = 0;
+            resync();
+        }
+    }
+
+    /**
+     * @return the number of frames in the history
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public int capacity() {
+        return this.capacity;
+    }
+
+    /**
+     * @param band the band
+     * @return the sum of the band over all frames in the history
+     */
+    public float sum(int band) {
+        return (float) this.sums[band];
+    }
+
+    /**
+     * @param age 0 for the newest frame, <code>size() - 1</code> for the oldest
+     * @param band the band
+     * @return the value of the band in the given frame
+     */
+    public float get(int age, int band) {
+        int slot = this.head - 1 - age;
+        if (slot < 0) {
+            slot += this.capacity;
+        }
+        return this.values[slot * this.bands + band];
+    }
+
+    // Recompute the sums once per wrap so rounding errors of the running sums
+    // cannot accumulate, amortized O(bands) per frame.
+    private void resync() {
+        for (int band = 0; band < this.bands; band++) {
+            double sum = 0;
+            for (int frame = 0; frame < this.size; frame++) {
+                sum += this.values[frame * this.bands + band];
+            }
+            this.sums[band] = sum;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package ch.fhnw.tvver.pitchdetection;
+
+import ch.fhnw.ether.audio.IAudioRenderTarget;
+import ch.fhnw.ether.media.AbstractRenderCommand;
+import ch.fhnw.ether.media.RenderCommandException;
+
+/**
+ * Anti-aliasing decimator providing a downsampled mono stream for pitch
+ * detection, while the frames of the program keep the full rate for other
+ * commands. The factor is the largest integer that keeps the highest
+ * frequency of interest below the output Nyquist frequency with some margin.
+ * The low pass is a Blackman windowed sinc and, polyphase style, only every
+ * <code>factor</code>th output is computed, so the cost per input sample is
+ * {@link #TAPS_PER_PHASE} multiply-adds. The filter state is carried across
+ * frames, the output of the current frame is available after {@link #run}
+ * through {@link #getOutput()} and {@link #getOutputLength()}. While the
+ * output is disabled only the filter history is kept, so a consumer that
+ * needs samples only now and then pays for the filter only then, with the
+ * same output as if it had run all the time.
+ */
+public final class Decimator extends AbstractRenderCommand<IAudioRenderTarget> {
+	/** Filter taps per output sample. */
+	public static final int TAPS_PER_PHASE = 32;
+	// output Nyquist frequency relative to the highest frequency of interest
+	private static final float MARGIN = 1.25f;
+
+	private final float maxFrequency;
+	private float sampleRate = -1;
+	private int factor = 1;
+	private float[] taps = new float[] { 1 };
+	private float[] work = new float[0];
+	private float[] output = new float[0];
+	private int outputLength;
+	// index into the next frame of the next output sample
+	private int next;
+	private boolean outputEnabled = true;
+
+	/**
+	 * @param maxFrequency
+	 *            the highest frequency the pitch detection has to see
+	 */
+	public Decimator(float maxFrequency) {
+		this.maxFrequency = maxFrequency;
+	}
+
+	/**
+	 * @param highest
+	 *            the highest note the pitch detection has to detect
+	 */
+	public Decimator(MidiNote highest) {
+		this(highest.getFrequency());
+	}
+
+	/**
+	 * @return the decimation factor for a sample rate and the highest
+	 *         frequency of interest, at least 1
+	 */
+	public static int getFactor(float sampleRate, float maxFrequency) {
+		return Math.max(1, (int) (sampleRate / (2 * maxFrequency * MARGIN)));
+	}
+
+	@Override
+	protected void run(IAudioRenderTarget target) throws RenderCommandException {
+		this.setSampleRate(target.getSampleRate());
+		this.process(target.getFrame().getMonoSamples());
+	}
+
+	/**
+	 * Designs the filter for an input sample rate unless it already is, done
+	 * by {@link #run} for the rate of the target.
+	 */
+	public void setSampleRate(float sampleRate) {
+		if (sampleRate == this.sampleRate) {
+			return;
+		}
+		this.sampleRate = sampleRate;
+		this.factor = getFactor(sampleRate, this.maxFrequency);
+		this.next = 0;
+		if (this.factor == 1) {
+			this.taps = new float[] { 1 };
+			return;
+		}
+		int length = TAPS_PER_PHASE * this.factor + 1;
+		// cutoff half way between the highest frequency and the output Nyquist frequency
+		double cutoff = (this.maxFrequency + sampleRate / (2.0 * this.factor)) / (2.0 * sampleRate);
+		double[] h = new double[length];
+		double sum = 0;
+		int mid = length / 2;
+		for (int i = 0; i < length; i++) {
+			int n = i - mid;
+			double sinc = n == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * n) / (Math.PI * n);
+			double window = 0.42 - 0.5 * Math.cos(2 * Math.PI * i / (length - 1)) + 0.08 * Math.cos(4 * Math.PI * i / (length - 1));
+			h[i] = sinc * window;
+			sum += h[i];
+		}
+		this.taps = new float[length];
+		for (int i = 0; i < length; i++) {
+			this.taps[i] = (float) (h[i] / sum);
+		}
+		this.work = new float[length - 1];
+	}
+
+	/**
+	 * Filters and decimates the next block of the input stream.
+	 * 
+	 * @param samples
+	 *            mono samples at the rate the decimator was designed for
+	 * @return the number of output samples, see {@link #getOutput()}
+	 */
+	public int process(float[] samples) {
+		int history = this.taps.length - 1;
+		if (this.work.length < history + samples.length) {
+			float[] work = new float[history + samples.length];
+			System.arraycopy(this.work, 0, work, 0, history);
+			this.work = work;
+		}
+		float[] work = this.work;
+		System.arraycopy(samples, 0, work, history, samples.length);
+
+		int maxOutput = (samples.length + this.factor - 1) / this.factor;
+		if (this.output.length < maxOutput) {
+			this.output = new float[maxOutput];
+		}
+
+		float[] taps = this.taps;
+		int count = 0;
+		int i = this.next;
+		if (!this.outputEnabled) {
+			if (i < samples.length) {
+				i += (samples.length - i + this.factor - 1) / this.factor * this.factor;
+			}
+		}
+		for (; i < samples.length; i += this.factor) {
+			// work[i + history] is the newest sample, taps are symmetric
+			float acc = 0;
+			for (int k = 0; k < taps.length; k++) {
+				acc += taps[k] * work[i + k];
+			}
+			this.output[count++] = acc;
+		}
+		this.next = i - samples.length;
+		this.outputLength = count;
+
+		System.arraycopy(work, samples.length, work, 0, history);
+		return count;
+	}
+
+	/**
+	 * Enables or disables computing output samples, enabled by default.
+	 */
+	public void setOutputEnabled(boolean outputEnabled) {
+		this.outputEnabled = outputEnabled;
+	}
+
+	/**
+	 * @return the output buffer, valid up to {@link #getOutputLength()}
+	 */
+	public float[] getOutput() {
+		return this.output;
+	}
+
+	public int getOutputLength() {
+		return this.outputLength;
+	}
+
+	public int getFactor() {
+		return this.factor;
+	}
+
+	/**
+	 * @return the sample rate of the output
+	 */
+	public float getOutputRate() {
+		return this.sampleRate / this.factor;
+	}
+}
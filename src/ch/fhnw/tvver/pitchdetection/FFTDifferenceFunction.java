@@ -0,0 +1,147 @@
+package ch.fhnw.tvver.pitchdetection;
+
+/**
+ * Computes the Yin difference function in O(N log N) by expressing it through
+ * the autocorrelation of the analysis buffer:<br>
+ * <br>
+ * <code>d(tau) = r(0, 0) + r(tau, tau) - 2 * r(0, tau)</code><br>
+ * <br>
+ * The two energy terms are taken from a prefix sum of squares, the cross
+ * term is computed with a single complex FFT which transforms the buffer and
+ * its first half at the same time. All buffers are allocated once per buffer
+ * size.<br>
+ * <br>
+ * Sources:
+ * <ul>
+ * <li>http://recherche.ircam.fr/equipes/pcm/cheveign/ps/2002_JASA_YIN_proof.pdf (section VI)</li>
+ * <li>https://github.com/JorenSix/TarsosDSP/blob/master/src/core/be/tarsos/dsp/pitch/FastYin.java</li>
+ * </ul>
+ */
+final class FFTDifferenceFunction {
+
+	private final int bufferSize;
+	private final int fftSize;
+	private final int[] reverse;
+	private final double[] cos;
+	private final double[] sin;
+	private final double[] re;
+	private final double[] im;
+	private final double[] energy;
+
+	FFTDifferenceFunction(int bufferSize) {
+		this.bufferSize = bufferSize;
+		int size = 1;
+		while (size < bufferSize) {
+			size <<= 1;
+		}
+		this.fftSize = size;
+		this.reverse = new int[size];
+		int bits = Integer.numberOfTrailingZeros(size);
+		for (int index = 0; index < size; index++) {
+			this.reverse[index] = bits == 0 ? 0 : Integer.reverse(index) >>> (32 - bits);
+		}
+		this.cos = new double[size / 2];
+		this.sin = new double[size / 2];
+		for (int index = 0; index < size / 2; index++) {
+			this.cos[index] = Math.cos(2 * Math.PI * index / size);
+			this.sin[index] = Math.sin(2 * Math.PI * index / size);
+		}
+		this.re = new double[size];
+		this.im = new double[size];
+		this.energy = new double[bufferSize + 1];
+	}
+
+	/**
+	 * Applies the difference function from the Yin paper.
+	 * 
+	 * @param audioBuffer
+	 *            the input buffer, at least <code>bufferSize</code> long
+	 * @param resultBuffer
+	 *            the result buffer, at most <code>bufferSize / 2</code> long
+	 */
+	void apply(float[] audioBuffer, float[] resultBuffer) {
+		int window = resultBuffer.length;
+
+		// real part: whole buffer, imaginary part: first window
+		for (int index = 0; index < this.bufferSize; index++) {
+			double sample = audioBuffer[index];
+			this.energy[index + 1] = this.energy[index] + sample * sample;
+			this.re[index] = sample;
+			this.im[index] = index < window ? sample : 0;
+		}
+		for (int index = this.bufferSize; index < this.fftSize; index++) {
+			this.re[index] = 0;
+			this.im[index] = 0;
+		}
+
+		transform();
+
+		// split the spectra of both real signals and multiply the first with
+		// the conjugate of the second. The product is stored conjugated, so
+		// the forward transform below acts as the inverse transform.
+		int mask = this.fftSize - 1;
+		for (int k = 0; k <= this.fftSize / 2; k++) {
+			int n = (this.fftSize - k) & mask;
+			double zr = this.re[k];
+			double zi = this.im[k];
+			double nr = this.re[n];
+			double ni = this.im[n];
+			double ar = (zr + nr) * 0.5;
+			double ai = (zi - ni) * 0.5;
+			double br = (zi + ni) * 0.5;
+			double bi = (nr - zr) * 0.5;
+			double pr = ar * br + ai * bi;
+			double pi = ai * br - ar * bi;
+			this.re[k] = pr;
+			this.im[k] = -pi;
+			this.re[n] = pr;
+			this.im[n] = pi;
+		}
+
+		transform();
+
+		double scale = 1.0 / this.fftSize;
+		double energy0 = this.energy[window];
+		resultBuffer[0] = 0;
+		for (int offset = 1; offset < window; offset++) {
+			double value = energy0 + this.energy[offset + window] - this.energy[offset]
+					- 2 * this.re[offset] * scale;
+			resultBuffer[offset] = value < 0 ? 0 : (float) value;
+		}
+	}
+
+	private void transform() {
+		double[] re = this.re;
+		double[] im = this.im;
+		int size = this.fftSize;
+		for (int index = 0; index < size; index++) {
+			int swap = this.reverse[index];
+			if (swap > index) {
+				double tmp = re[index];
+				re[index] = re[swap];
+				re[swap] = tmp;
+				tmp = im[index];
+				im[index] = im[swap];
+				im[swap] = tmp;
+			}
+		}
+		for (int length = 2; length <= size; length <<= 1) {
+			int half = length >> 1;
+			int step = size / length;
+			for (int start = 0; start < size; start += length) {
+				for (int k = 0; k < half; k++) {
+					double wr = this.cos[k * step];
+					double wi = -this.sin[k * step];
+					int a = start + k;
+					int b = a + half;
+					double tr = re[b] * wr - im[b] * wi;
+					double ti = re[b] * wi + im[b] * wr;
+					re[b] = re[a] - tr;
+					im[b] = im[a] - ti;
+					re[a] += tr;
+					im[a] += ti;
+				}
+			}
+		}
+	}
+}
@@ -1,32 +1,103 @@
 package ch.fhnw.tvver.pitchdetection;
 
 public class MidiNoteUtils {
-	
-	public static MidiNote getNearestMidiNote(float frequency){
-		MidiNote lower = null;
-		MidiNote upper = null;
-		for(MidiNote note : MidiNote.values()){
-			if(Float.compare(frequency, note.getFrequency()) == 0){
-				return note;
-			} else if(frequency > note.getFrequency()){
-				lower = note;
-			} else if(frequency < note.getFrequency()){
-				upper = note;
-				break;
-			}
+
+	private static final MidiNote[] NOTES = MidiNote.values();
+	private static final float[] FREQUENCIES = new float[NOTES.length];
+	private static final int LAST_KEY = NOTES.length - 1;
+	private static final double A4_KEY = 69;
+	private static final double A4_FREQUENCY = 440;
+	private static final double LN_2 = Math.log(2);
+
+	static {
+		for (MidiNote note : NOTES) {
+			FREQUENCIES[note.getId()] = note.getFrequency();
 		}
-		if(lower == null){
-			return upper;
-		} else if (upper == null){
-			return lower;
-		} else {
-			float diff1 = frequency - lower.getFrequency();
-			float diff2 = upper.getFrequency() - frequency;
-			if(diff1 <= diff2){
-				return lower;
-			} else 
-				return upper;
+	}
+
+	/**
+	 * Returns the note with the given MIDI key without copying the enum values.
+	 * 
+	 * @param key
+	 *            the MIDI key (0-127)
+	 * @return the note
+	 */
+	public static MidiNote getMidiNote(int key) {
+		return NOTES[key];
+	}
+
+	public static MidiNote getNearestMidiNote(float frequency) {
+		if (Float.isNaN(frequency)) {
+			return null;
 		}
+		return NOTES[getNearestMidiKey(frequency)];
+	}
+
+	/**
+	 * Returns the MIDI key nearest (in Hz) to the given frequency. The
+	 * candidate is computed in closed form and corrected against the note
+	 * table, so the result is the same as a scan over all notes.
+	 * 
+	 * @param frequency
+	 *            the frequency in Hz
+	 * @return the MIDI key (0-127)
+	 */
+	public static int getNearestMidiKey(float frequency) {
+		return getNearestMidiKey(frequency, toFractionalKey(frequency));
+	}
+
+	/**
+	 * Returns the nearest MIDI key and the deviation from it in cents with a
+	 * single logarithm.
+	 * 
+	 * @param frequency
+	 *            the frequency in Hz
+	 * @return the key and cents packed with
+	 *         {@link PitchDetectionResult#pack(int, boolean, int)}, flagged as
+	 *         pitched.
+	 */
+	public static int getPackedPitch(float frequency) {
+		double fractionalKey = toFractionalKey(frequency);
+		int key = getNearestMidiKey(frequency, fractionalKey);
+		int cents = (int) Math.round(100 * (fractionalKey - key));
+		return PitchDetectionResult.pack(key, true, cents);
 	}
-	
+
+	/**
+	 * Returns the deviation of a frequency from a MIDI note.
+	 * 
+	 * @param frequency
+	 *            the frequency in Hz
+	 * @param note
+	 *            the reference note
+	 * @return the deviation in cents, positive if the frequency is above the
+	 *         note.
+	 */
+	public static float getCentsDeviation(float frequency, MidiNote note) {
+		return (float) (1200 * Math.log(frequency / note.getFrequency()) / LN_2);
+	}
+
+	private static double toFractionalKey(float frequency) {
+		return A4_KEY + 12 * Math.log(frequency / A4_FREQUENCY) / LN_2;
+	}
+
+	private static int getNearestMidiKey(float frequency, double fractionalKey) {
+		if (!(frequency > FREQUENCIES[0])) {
+			return 0;
+		} else if (frequency >= FREQUENCIES[LAST_KEY]) {
+			return LAST_KEY;
+		}
+		int lower = Math.max(0, Math.min(LAST_KEY - 1, (int) Math.floor(fractionalKey)));
+		// the table is rounded to float, step at most once to get
+		// FREQUENCIES[lower] <= frequency < FREQUENCIES[lower + 1]
+		if (frequency < FREQUENCIES[lower]) {
+			lower--;
+		} else if (frequency >= FREQUENCIES[lower + 1]) {
+			lower++;
+		}
+		float diff1 = frequency - FREQUENCIES[lower];
+		float diff2 = FREQUENCIES[lower + 1] - frequency;
+		return diff1 <= diff2 ? lower : lower + 1;
+	}
+
 }
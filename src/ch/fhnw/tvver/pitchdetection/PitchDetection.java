@@ -5,6 +5,15 @@ public interface PitchDetection {
 	void detectPitch();
 	
 	PitchDetectionResult getResult();
+
+	/**
+	 * Returns the current result encoded as int, see
+	 * {@link PitchDetectionResult#pack(int, boolean, int)}. Allocation free
+	 * alternative to {@link #getResult()}.
+	 * 
+	 * @return the packed result or {@link PitchDetectionResult#NONE}.
+	 */
+	int getPackedResult();
 	
 	void clearResult();
 	
@@ -2,8 +2,17 @@ package ch.fhnw.tvver.pitchdetection;
 
 public class PitchDetectionResult {
 
+	/** Packed value for "no result available". */
+	public static final int NONE = 0;
+
+	private static final int KEY_MASK = 0x7F;
+	private static final int PITCHED = 1 << 7;
+	private static final int PRESENT = 1 << 8;
+	private static final int CENTS_SHIFT = 16;
+
 	private MidiNote midiNote;
 	private boolean isPitched;
+	private int cents;
 
 	public MidiNote getMidiNote() {
 		return this.midiNote;
@@ -21,4 +30,49 @@ public class PitchDetectionResult {
 		this.isPitched = isPitched;
 	}
 
+	/**
+	 * @return the deviation of the detected frequency from the MIDI note in
+	 *         cents.
+	 */
+	public int getCents() {
+		return this.cents;
+	}
+
+	public void setCents(int cents) {
+		this.cents = cents;
+	}
+
+	/**
+	 * Encodes a result into an int: bits 0-6 hold the MIDI key, bit 7 the
+	 * pitched flag, bit 8 marks a present result and bits 16-31 hold the
+	 * signed deviation in cents.
+	 * 
+	 * @param midiKey
+	 *            the MIDI key (0-127)
+	 * @param pitched
+	 *            whether a pitch was found
+	 * @param cents
+	 *            the deviation in cents
+	 * @return the packed result, never {@link #NONE}.
+	 */
+	public static int pack(int midiKey, boolean pitched, int cents) {
+		return (midiKey & KEY_MASK) | (pitched ? PITCHED : 0) | PRESENT | (cents << CENTS_SHIFT);
+	}
+
+	public static boolean isPresent(int packed) {
+		return (packed & PRESENT) != 0;
+	}
+
+	public static boolean isPitched(int packed) {
+		return (packed & PITCHED) != 0;
+	}
+
+	public static int getMidiKey(int packed) {
+		return packed & KEY_MASK;
+	}
+
+	public static int getCents(int packed) {
+		return packed >> CENTS_SHIFT;
+	}
+
 }
@@ -0,0 +1,234 @@
+package ch.fhnw.tvver.pitchdetection;
+
+import java.util.Arrays;
+
+/**
+ * The inner loops of the Yin algorithm and the band sums of the onset
+ * detection. Three implementations exist:
+ * <ul>
+ * <li>{@link #SCALAR}: the plain loops from the paper, used as reference.</li>
+ * <li>{@link #UNROLLED}: computes four lags per pass over the buffer so the
+ * sample loads are shared and four independent accumulator chains keep the
+ * FPU busy. The summation order per lag is unchanged, so the results are
+ * bit-identical to {@link #SCALAR}.</li>
+ * <li><code>vector</code>: SIMD loops with <code>jdk.incubator.vector</code>,
+ * see {@link #vector()}. The lanes change the summation order, so results
+ * differ from {@link #SCALAR} by rounding.</li>
+ * </ul>
+ * The implementation is picked once at startup through the system property
+ * <code>ch.fhnw.tvver.yin.kernels</code> (<code>scalar</code>,
+ * <code>unrolled</code> or <code>vector</code>), default is
+ * <code>unrolled</code>. If <code>vector</code> is not available
+ * <code>unrolled</code> is used instead.
+ */
+public abstract class YinKernels {
+
+	public static final YinKernels SCALAR = new Scalar();
+	public static final YinKernels UNROLLED = new Unrolled();
+	public static final YinKernels DEFAULT = select(System.getProperty("ch.fhnw.tvver.yin.kernels"));
+
+	private static final String VECTOR_CLASS = "ch.fhnw.tvver.pitchdetection.VectorYinKernels";
+
+	private static YinKernels select(String name) {
+		if ("scalar".equalsIgnoreCase(name)) {
+			return SCALAR;
+		}
+		YinKernels vector = "vector".equalsIgnoreCase(name) ? vector() : null;
+		return vector != null ? vector : UNROLLED;
+	}
+
+	/**
+	 * Returns the SIMD implementation. It is compiled from
+	 * <code>src-vector</code> on JDK 16 or later and needs
+	 * <code>--add-modules jdk.incubator.vector</code> at runtime.
+	 * 
+	 * @return the implementation or <code>null</code> if it is not on the
+	 *         class path or the module is missing.
+	 */
+	public static YinKernels vector() {
+		try {
+			return (YinKernels) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Computes the difference function from the Yin paper.
+	 * 
+	 * @param audioBuffer
+	 *            the input buffer, at least twice as long as the result
+	 * @param resultBuffer
+	 *            the result buffer
+	 */
+	public abstract void difference(float[] audioBuffer, float[] resultBuffer);
+
+	/**
+	 * Applies the cumulative mean normalization in place.
+	 * 
+	 * @param resultBuffer
+	 *            the output of {@link #difference(float[], float[])}
+	 */
+	public abstract void cumulativeMeanNormalization(float[] resultBuffer);
+
+	/**
+	 * Searches the first value below a threshold.
+	 * 
+	 * @param resultBuffer
+	 *            the buffer to search
+	 * @param from
+	 *            the first index to look at
+	 * @param threshold
+	 *            the threshold
+	 * @return the index of the first value below <code>threshold</code> or
+	 *         <code>resultBuffer.length</code> if there is none.
+	 */
+	public abstract int firstBelow(float[] resultBuffer, int from, double threshold);
+
+	/**
+	 * Sums a range of values, such as the power spectrum bins of a band.
+	 * 
+	 * @param values
+	 *            the values
+	 * @param from
+	 *            the first index, inclusive
+	 * @param to
+	 *            the last index, exclusive
+	 * @return the sum
+	 */
+	public double sum(float[] values, int from, int to) {
+		double sum = 0;
+		for (int index = from; index < to; index++) {
+			sum += values[index];
+		}
+		return sum;
+	}
+
+	private static final class Scalar extends YinKernels {
+		@Override
+		public String toString() {
+			return "scalar";
+		}
+
+		@Override
+		public void difference(float[] audioBuffer, float[] resultBuffer) {
+			Arrays.fill(resultBuffer, 0);
+			for (int offset = 1; offset < resultBuffer.length; offset++) {
+				for (int index = 0; index < resultBuffer.length; index++) {
+					float delta = audioBuffer[index] - audioBuffer[index + offset];
+					resultBuffer[offset] += delta * delta;
+				}
+			}
+		}
+
+		@Override
+		public void cumulativeMeanNormalization(float[] resultBuffer) {
+			resultBuffer[0] = 1;
+			float sum = 0;
+			for (int index = 1; index < resultBuffer.length; index++) {
+				sum = sum + resultBuffer[index];
+				resultBuffer[index] = resultBuffer[index] * index / sum;
+			}
+		}
+
+		@Override
+		public int firstBelow(float[] resultBuffer, int from, double threshold) {
+			int index;
+			for (index = from; index < resultBuffer.length; index++) {
+				if (resultBuffer[index] < threshold) {
+					break;
+				}
+			}
+			return index;
+		}
+	}
+
+	private static final class Unrolled extends YinKernels {
+		@Override
+		public String toString() {
+			return "unrolled";
+		}
+
+		@Override
+		public void difference(float[] audioBuffer, float[] resultBuffer) {
+			int length = resultBuffer.length;
+			if (length > 0) {
+				resultBuffer[0] = 0;
+			}
+			int offset = 1;
+			for (; offset + 3 < length; offset += 4) {
+				float sum0 = 0;
+				float sum1 = 0;
+				float sum2 = 0;
+				float sum3 = 0;
+				for (int index = 0; index < length; index++) {
+					float sample = audioBuffer[index];
+					float delta0 = sample - audioBuffer[index + offset];
+					float delta1 = sample - audioBuffer[index + offset + 1];
+					float delta2 = sample - audioBuffer[index + offset + 2];
+					float delta3 = sample - audioBuffer[index + offset + 3];
+					sum0 += delta0 * delta0;
+					sum1 += delta1 * delta1;
+					sum2 += delta2 * delta2;
+					sum3 += delta3 * delta3;
+				}
+				resultBuffer[offset] = sum0;
+				resultBuffer[offset + 1] = sum1;
+				resultBuffer[offset + 2] = sum2;
+				resultBuffer[offset + 3] = sum3;
+			}
+			for (; offset < length; offset++) {
+				float sum = 0;
+				for (int index = 0; index < length; index++) {
+					float delta = audioBuffer[index] - audioBuffer[index + offset];
+					sum += delta * delta;
+				}
+				resultBuffer[offset] = sum;
+			}
+		}
+
+		@Override
+		public void cumulativeMeanNormalization(float[] resultBuffer) {
+			int length = resultBuffer.length;
+			resultBuffer[0] = 1;
+			float sum = 0;
+			int index = 1;
+			for (; index + 3 < length; index += 4) {
+				float value0 = resultBuffer[index];
+				float value1 = resultBuffer[index + 1];
+				float value2 = resultBuffer[index + 2];
+				float value3 = resultBuffer[index + 3];
+				float sum0 = sum + value0;
+				float sum1 = sum0 + value1;
+				float sum2 = sum1 + value2;
+				sum = sum2 + value3;
+				resultBuffer[index] = value0 * index / sum0;
+				resultBuffer[index + 1] = value1 * (index + 1) / sum1;
+				resultBuffer[index + 2] = value2 * (index + 2) / sum2;
+				resultBuffer[index + 3] = value3 * (index + 3) / sum;
+			}
+			for (; index < length; index++) {
+				sum = sum + resultBuffer[index];
+				resultBuffer[index] = resultBuffer[index] * index / sum;
+			}
+		}
+
+		@Override
+		public int firstBelow(float[] resultBuffer, int from, double threshold) {
+			int length = resultBuffer.length;
+			int index = from;
+			for (; index + 3 < length; index += 4) {
+				if (resultBuffer[index] < threshold | resultBuffer[index + 1] < threshold
+						| resultBuffer[index + 2] < threshold | resultBuffer[index + 3] < threshold) {
+					break;
+				}
+			}
+			for (; index < length; index++) {
+				if (resultBuffer[index] < threshold) {
+					break;
+				}
+			}
+			return index;
+		}
+	}
+}
@@ -12,34 +12,141 @@ import ch.fhnw.ether.media.RenderCommandException;
  * <li>https://github.com/JorenSix/TarsosDSP/blob/master/src/core/be/tarsos/dsp/pitch/Yin.java</li>
  * <li>http://recherche.ircam.fr/equipes/pcm/cheveign/ps/2002_JASA_YIN_proof.pdf</li>
  * </ul>
+ * All buffers and the result are allocated up front, so a detection does
+ * not create garbage on the render thread. {@link #getResult()} always
+ * returns the same instance, {@link #getPackedResult()} the same
+ * information without any object access.
  */
 public final class YinPitchDetection extends AbstractRenderCommand<IAudioRenderTarget> implements PitchDetection {
 
-	private static final double THRESHOLD = 0.4;
-	private static final int AUDIO_BUFFER_SIZE = 1400;
+	/**
+	 * The way the difference function of the Yin algorithm is computed.
+	 */
+	public enum DifferenceFunction {
+		/** Nested loop over all lags, O(N^2). */
+		DIRECT,
+		/** Autocorrelation computed with an FFT, O(N log N). */
+		FFT,
+		/**
+		 * Lag by lag together with the normalization, stopping at the first
+		 * accepted dip. Same results as {@link #DIRECT}, O(N * lag) for a
+		 * pitched buffer, and supports a lag range, see
+		 * {@link YinPitchDetection#setFrequencyRange(float, float)}.
+		 */
+		INCREMENTAL
+	}
 
+	/** Default absolute threshold of the cumulative mean normalized difference. */
+	public static final double THRESHOLD = 0.4;
+	/** Default number of samples analysed. */
+	public static final int AUDIO_BUFFER_SIZE = 1400;
+
+	private final int bufferSize;
+	private final double threshold;
+	private final DifferenceFunction differenceFunction;
+	private final FFTDifferenceFunction fftDifferenceFunction;
+	private final YinKernels kernels;
 	private float sampleRate;
-	private float[] audioBuffer;
+	private final float[] audioBuffer;
+	private final float[] resultBuffer;
+	private final PitchDetectionResult result = new PitchDetectionResult();
 	private PitchDetectionResult pitchResult;
+	private int packedResult = PitchDetectionResult.NONE;
+	private final Decimator decimator;
 	private boolean recording = false;
 	private int recordCounter = 0;
+	private int fill = 0;
+	private float minFrequency = 0;
+	private float maxFrequency = 0;
+	// state of the incremental detection
+	private final float[] differences = new float[4];
+	private float sum;
+	private int index;
 
 	public YinPitchDetection() {
-		this.audioBuffer = new float[AUDIO_BUFFER_SIZE];
+		this(AUDIO_BUFFER_SIZE, DifferenceFunction.DIRECT);
+	}
+
+	/**
+	 * Creates a Yin pitch detection.
+	 * 
+	 * @param bufferSize
+	 *            the number of samples to analyse. Half of it is the largest
+	 *            lag searched, so larger buffers detect lower notes.
+	 * @param differenceFunction
+	 *            how the difference function is computed. {@link DifferenceFunction#FFT}
+	 *            makes large buffers affordable.
+	 */
+	public YinPitchDetection(int bufferSize, DifferenceFunction differenceFunction) {
+		this(bufferSize, differenceFunction, THRESHOLD);
+	}
+
+	/**
+	 * Creates a Yin pitch detection.
+	 * 
+	 * @param bufferSize
+	 *            the number of samples to analyse.
+	 * @param differenceFunction
+	 *            how the difference function is computed.
+	 * @param threshold
+	 *            the absolute threshold, lower values reject more unclear
+	 *            periods.
+	 */
+	public YinPitchDetection(int bufferSize, DifferenceFunction differenceFunction, double threshold) {
+		this(bufferSize, differenceFunction, threshold, null);
+	}
+
+	/**
+	 * Creates a Yin pitch detection analysing a decimated stream.
+	 * 
+	 * @param bufferSize
+	 *            the number of samples to analyse at the decimated rate.
+	 * @param differenceFunction
+	 *            how the difference function is computed.
+	 * @param threshold
+	 *            the absolute threshold.
+	 * @param decimator
+	 *            provides the samples, it must run before this command and
+	 *            only computes output while a pitch is recorded. With
+	 *            <code>null</code> the frames are analysed at full rate.
+	 */
+	public YinPitchDetection(int bufferSize, DifferenceFunction differenceFunction, double threshold, Decimator decimator) {
+		this(bufferSize, differenceFunction, threshold, decimator, YinKernels.DEFAULT);
+	}
+
+	// the kernels are a system property in production, tests pick them here
+	YinPitchDetection(int bufferSize, DifferenceFunction differenceFunction, double threshold, Decimator decimator, YinKernels kernels) {
+		this.bufferSize = bufferSize;
+		this.kernels = kernels;
+		this.decimator = decimator;
+		if (decimator != null) {
+			decimator.setOutputEnabled(false);
+		}
+		this.threshold = threshold;
+		this.differenceFunction = differenceFunction;
+		this.fftDifferenceFunction = differenceFunction == DifferenceFunction.FFT
+				? new FFTDifferenceFunction(bufferSize) : null;
+		this.audioBuffer = new float[bufferSize];
+		this.resultBuffer = new float[bufferSize / 2];
 	}
 
 	@Override
 	protected void run(IAudioRenderTarget target) throws RenderCommandException {
+		if (this.decimator != null) {
+			this.runDecimated();
+			return;
+		}
 		this.sampleRate = target.getSampleRate();
 		float[] incomingSamples = target.getFrame().getMonoSamples();
+		if (incomingSamples.length == 0) {
+			return;
+		}
 		if (this.recording) {
 			int offset = incomingSamples.length * this.recordCounter;
-			for (int index = 0; index < incomingSamples.length; index++) {
-				this.audioBuffer[index + offset] = incomingSamples[index];
-			}
+			System.arraycopy(incomingSamples, 0, this.audioBuffer, offset, incomingSamples.length);
 			this.recordCounter++;
 		}
-		int maxRecords = AUDIO_BUFFER_SIZE / incomingSamples.length;
+		int maxRecords = this.bufferSize / incomingSamples.length;
 		if (this.recordCounter == maxRecords) {
 			this.recording = false;
 			this.recordCounter = 0;
@@ -47,23 +154,83 @@ public final class YinPitchDetection extends AbstractRenderCommand<IAudioRenderT
 		}
 	}
 
+	// decimated frames vary in length, so the buffer is filled sample by sample
+	private void runDecimated() {
+		if (!this.recording) {
+			return;
+		}
+		this.sampleRate = this.decimator.getOutputRate();
+		int count = Math.min(this.decimator.getOutputLength(), this.bufferSize - this.fill);
+		System.arraycopy(this.decimator.getOutput(), 0, this.audioBuffer, this.fill, count);
+		this.fill += count;
+		if (this.fill == this.bufferSize) {
+			this.recording = false;
+			this.fill = 0;
+			this.decimator.setOutputEnabled(false);
+			this.runDetection();
+		}
+	}
+
 	@Override
 	public void detectPitch() {
 		this.recording = true;
+		if (this.decimator != null) {
+			this.decimator.setOutputEnabled(true);
+		}
+	}
+
+	/**
+	 * Runs the detection directly on a buffer, independent of the render
+	 * pipeline.
+	 * 
+	 * @param samples
+	 *            mono samples, at least as many as the buffer size
+	 * @param sampleRate
+	 *            the sample rate of <code>samples</code>
+	 * @return the packed result, see {@link #getPackedResult()}
+	 */
+	public int detect(float[] samples, float sampleRate) {
+		System.arraycopy(samples, 0, this.audioBuffer, 0, this.bufferSize);
+		this.sampleRate = sampleRate;
+		this.runDetection();
+		return this.packedResult;
+	}
+
+	public int getBufferSize() {
+		return this.bufferSize;
 	}
 
 	private void runDetection() {
-		this.pitchResult = new PitchDetectionResult();
-		float[] resultBuffer = new float[AUDIO_BUFFER_SIZE / 2];
-		this.applyDifferenceFunction(this.audioBuffer, resultBuffer);
-		this.applyCumulativeMeanNormalization(resultBuffer);
-		int index = this.applyAbsoluteThreshold(resultBuffer);
+		this.pitchResult = this.result;
+		float[] resultBuffer = this.resultBuffer;
+		int length = resultBuffer.length;
+		int index;
+		if (this.differenceFunction == DifferenceFunction.INCREMENTAL) {
+			if (this.minFrequency > 0) {
+				length = Math.min(length, (int) Math.ceil(this.sampleRate / this.minFrequency) + 1);
+			}
+			int from = this.maxFrequency > 0 ? Math.max(2, (int) (this.sampleRate / this.maxFrequency)) : 2;
+			index = this.applyIncremental(resultBuffer, length, from);
+		} else {
+			if (this.differenceFunction == DifferenceFunction.FFT) {
+				this.fftDifferenceFunction.apply(this.audioBuffer, resultBuffer);
+			} else {
+				this.applyDifferenceFunction(this.audioBuffer, resultBuffer);
+			}
+			this.applyCumulativeMeanNormalization(resultBuffer);
+			index = this.applyAbsoluteThreshold(resultBuffer);
+		}
 		if (index >= 0) {
-			float correctedIndex = this.applyParabolicInterpolation(resultBuffer, index);
+			float correctedIndex = this.applyParabolicInterpolation(resultBuffer, index, length);
 			float freq = this.sampleRate / correctedIndex;
-			this.pitchResult.setMidiNote(MidiNoteUtils.getNearestMidiNote(freq));
+			this.packedResult = MidiNoteUtils.getPackedPitch(freq);
+			this.pitchResult.setMidiNote(MidiNoteUtils.getMidiNote(PitchDetectionResult.getMidiKey(this.packedResult)));
+			this.pitchResult.setCents(PitchDetectionResult.getCents(this.packedResult));
 		} else {
 			this.pitchResult.setPitched(false);
+			this.pitchResult.setMidiNote(null);
+			this.pitchResult.setCents(0);
+			this.packedResult = PitchDetectionResult.pack(0, false, 0);
 		}
 	}
 
@@ -76,12 +243,7 @@ public final class YinPitchDetection extends AbstractRenderCommand<IAudioRenderT
 	 *            the result buffer
 	 */
 	private void applyDifferenceFunction(float[] audioBuffer, float[] resultBuffer) {
-		for (int offset = 1; offset < resultBuffer.length; offset++) {
-			for (int index = 0; index < resultBuffer.length; index++) {
-				float delta = audioBuffer[index] - audioBuffer[index + offset];
-				resultBuffer[offset] += delta * delta;
-			}
-		}
+		this.kernels.difference(audioBuffer, resultBuffer);
 	}
 
 	/**
@@ -91,12 +253,7 @@ public final class YinPitchDetection extends AbstractRenderCommand<IAudioRenderT
 	 *            the buffer where this function should be applied
 	 */
 	private void applyCumulativeMeanNormalization(float[] resultBuffer) {
-		resultBuffer[0] = 1;
-		float sum = 0;
-		for (int index = 1; index < resultBuffer.length; index++) {
-			sum = sum + resultBuffer[index];
-			resultBuffer[index] = resultBuffer[index] * index / sum;
-		}
+		this.kernels.cumulativeMeanNormalization(resultBuffer);
 	}
 
 	/**
@@ -108,16 +265,11 @@ public final class YinPitchDetection extends AbstractRenderCommand<IAudioRenderT
 	 * @return the index of the first local minimum, or -1 of none found.
 	 */
 	private int applyAbsoluteThreshold(float[] resultBuffer) {
-		int index;
-		for (index = 2; index < resultBuffer.length; index++) {
-			if (resultBuffer[index] < THRESHOLD) {
-				while (index + 1 < resultBuffer.length && resultBuffer[index + 1] < resultBuffer[index]) {
-					index++;
-				}
-				break;
-			}
+		int index = this.kernels.firstBelow(resultBuffer, 2, this.threshold);
+		while (index + 1 < resultBuffer.length && resultBuffer[index + 1] < resultBuffer[index]) {
+			index++;
 		}
-		if (index == resultBuffer.length || resultBuffer[index] >= THRESHOLD) {
+		if (index == resultBuffer.length || resultBuffer[index] >= this.threshold) {
 			this.pitchResult.setPitched(false);
 			return -1;
 		} else {
@@ -126,7 +278,107 @@ public final class YinPitchDetection extends AbstractRenderCommand<IAudioRenderT
 		}
 	}
 
-	private float applyParabolicInterpolation(float[] resultBuffer, int index) {
+	/**
+	 * Computes the difference function and the cumulative mean normalization
+	 * lag by lag, with the same arithmetic as {@link YinKernels}, and applies
+	 * the absolute threshold step on the fly. Stops at the lag after the local
+	 * minimum following the first value below the threshold, which is the
+	 * last value the interpolation needs.
+	 * 
+	 * @param resultBuffer
+	 *            the buffer receiving the normalized values up to the lag
+	 *            after the result
+	 * @param length
+	 *            the number of lags to consider
+	 * @param from
+	 *            the first lag compared against the threshold
+	 * @return the index of the first local minimum, or -1 of none found.
+	 */
+	private int applyIncremental(float[] resultBuffer, int length, int from) {
+		float[] audioBuffer = this.audioBuffer;
+		int window = resultBuffer.length;
+		float[] differences = this.differences;
+		resultBuffer[0] = 1;
+		this.sum = 0;
+		this.index = -1;
+		int lag = 1;
+		// four lags per pass like YinKernels.UNROLLED, at most three too many
+		for (; lag + 3 < length; lag += 4) {
+			float sum0 = 0;
+			float sum1 = 0;
+			float sum2 = 0;
+			float sum3 = 0;
+			for (int i = 0; i < window; i++) {
+				float sample = audioBuffer[i];
+				float delta0 = sample - audioBuffer[i + lag];
+				float delta1 = sample - audioBuffer[i + lag + 1];
+				float delta2 = sample - audioBuffer[i + lag + 2];
+				float delta3 = sample - audioBuffer[i + lag + 3];
+				sum0 += delta0 * delta0;
+				sum1 += delta1 * delta1;
+				sum2 += delta2 * delta2;
+				sum3 += delta3 * delta3;
+			}
+			differences[0] = sum0;
+			differences[1] = sum1;
+			differences[2] = sum2;
+			differences[3] = sum3;
+			for (int j = 0; j < 4; j++) {
+				if (this.accept(resultBuffer, lag + j, differences[j], from)) {
+					this.pitchResult.setPitched(true);
+					return this.index;
+				}
+			}
+		}
+		for (; lag < length; lag++) {
+			float difference = 0;
+			for (int i = 0; i < window; i++) {
+				float delta = audioBuffer[i] - audioBuffer[i + lag];
+				difference += delta * delta;
+			}
+			if (this.accept(resultBuffer, lag, difference, from)) {
+				break;
+			}
+		}
+		this.pitchResult.setPitched(this.index >= 0);
+		return this.index;
+	}
+
+	// normalizes one lag and advances the threshold search, true once the local minimum is passed
+	private boolean accept(float[] resultBuffer, int lag, float difference, int from) {
+		this.sum = this.sum + difference;
+		float value = difference * lag / this.sum;
+		resultBuffer[lag] = value;
+		if (this.index >= 0) {
+			if (value < resultBuffer[this.index]) {
+				this.index = lag;
+			} else {
+				return true;
+			}
+		} else if (lag >= from && value < this.threshold) {
+			this.index = lag;
+		}
+		return false;
+	}
+
+	/**
+	 * Limits the incremental detection to periods of the given frequency
+	 * range, 0 leaves a side open. The normalization still starts at the
+	 * first lag, so only the lags above the range are saved. Other difference
+	 * functions ignore the range.
+	 * 
+	 * @param minFrequency
+	 *            the lowest frequency in Hz, it bounds the largest lag.
+	 * @param maxFrequency
+	 *            the highest frequency in Hz, it bounds the smallest lag
+	 *            accepted.
+	 */
+	public void setFrequencyRange(float minFrequency, float maxFrequency) {
+		this.minFrequency = minFrequency;
+		this.maxFrequency = maxFrequency;
+	}
+
+	private float applyParabolicInterpolation(float[] resultBuffer, int index, int length) {
 		int indexBelow;
 		int indexAbove;
 		if (index < 1) {
@@ -134,7 +386,7 @@ public final class YinPitchDetection extends AbstractRenderCommand<IAudioRenderT
 		} else {
 			indexBelow = index - 1;
 		}
-		if (index + 1 < resultBuffer.length) {
+		if (index + 1 < length) {
 			indexAbove = index + 1;
 		} else {
 			indexAbove = index;
@@ -162,9 +414,15 @@ public final class YinPitchDetection extends AbstractRenderCommand<IAudioRenderT
 		return this.pitchResult;
 	}
 
+	@Override
+	public int getPackedResult() {
+		return this.packedResult;
+	}
+
 	@Override
 	public void clearResult() {
 		this.pitchResult = null;
+		this.packedResult = PitchDetectionResult.NONE;
 	}
 
 }
\ No newline at end of file
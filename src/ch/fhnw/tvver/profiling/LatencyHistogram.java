@@ -0,0 +1,141 @@
+package ch.fhnw.tvver.profiling;
+
+import java.util.Arrays;
+
+/**
+ * Fixed memory histogram of durations in nanoseconds. Values below 8 ns get
+ * their own bucket, above that every power of two is split into 8 linear sub
+ * buckets, so the relative error of a percentile is below 12.5% over the whole
+ * long range with 488 counters. Recording neither allocates nor locks, it is
+ * meant to be written by a single thread. Readers on other threads should use
+ * {@link #snapshot()}, which may miss values recorded concurrently.
+ */
+public final class LatencyHistogram {
+	private static final int SUB_BITS    = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int NUM_BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+	private final long[] counts = new long[NUM_BUCKETS];
+	private long         count;
+	private long         sum;
+	private long         max;
+
+	/**
+	 * Records one duration, negative durations are counted as zero.
+	 * 
+	 * @param nanos The duration in nanoseconds.
+	 */
+	public void record(long nanos) {
+		if(nanos < 0) nanos = 0;
+		counts[index(nanos)]++;
+		sum += nanos;
+		if(nanos > max) max = nanos;
+		count++;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return The mean duration in nanoseconds or 0 if nothing was recorded.
+	 */
+	public double getMean() {
+		return count == 0 ? 0 : sum / (double)count;
+	}
+
+	/**
+	 * @return The exact maximum duration in nanoseconds.
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * Returns the upper bound of the bucket holding the given percentile, capped at the maximum.
+	 * 
+	 * @param percentile The percentile between 0 and 100.
+	 * @return The duration in nanoseconds or 0 if nothing was recorded.
+	 */
+	public long getPercentile(double percentile) {
+		if(count == 0) return 0;
+		long rank = (long)Math.ceil(Math.max(0, Math.min(100, percentile)) / 100.0 * count);
+		if(rank < 1) rank = 1;
+		long seen = 0;
+		for(int i = 0; i < NUM_BUCKETS; i++) {
+			seen += counts[i];
+			if(seen >= rank)
+				return Math.min(upperBound(i), max);
+		}
+		return max;
+	}
+
+	/**
+	 * Adds all values of <code>other</code> to this histogram.
+	 */
+	public void add(LatencyHistogram other) {
+		for(int i = 0; i < NUM_BUCKETS; i++)
+			counts[i] += other.counts[i];
+		count += other.count;
+		sum   += other.sum;
+		max    = Math.max(max, other.max);
+	}
+
+	public static int getNumBuckets() {
+		return NUM_BUCKETS;
+	}
+
+	/**
+	 * @return The number of values recorded in bucket <code>index</code>.
+	 */
+	public long getBucketCount(int index) {
+		return counts[index];
+	}
+
+	/**
+	 * @return The smallest duration in nanoseconds counted in bucket <code>index</code>.
+	 */
+	public static long getBucketLowerBound(int index) {
+		return index == 0 ? 0 : upperBound(index - 1) + 1;
+	}
+
+	/**
+	 * @return The largest duration in nanoseconds counted in bucket <code>index</code>.
+	 */
+	public static long getBucketUpperBound(int index) {
+		return upperBound(index);
+	}
+
+	public void reset() {
+		Arrays.fill(counts, 0);
+		count = 0;
+		sum   = 0;
+		max   = 0;
+	}
+
+	/**
+	 * @return A copy of this histogram.
+	 */
+	public LatencyHistogram snapshot() {
+		LatencyHistogram result = new LatencyHistogram();
+		result.add(this);
+		return result;
+	}
+
+	static int index(long value) {
+		if(value < SUB_BUCKETS)
+			return (int)value;
+		int exp = 63 - Long.numberOfLeadingZeros(value);
+		return ((exp - SUB_BITS + 1) << SUB_BITS) + (int)((value >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1));
+	}
+
+	static long upperBound(int index) {
+		if(index < SUB_BUCKETS)
+			return index;
+		int exp = (index >>> SUB_BITS) + SUB_BITS - 1;
+		int sub = index & (SUB_BUCKETS - 1);
+		if(exp >= 63) return Long.MAX_VALUE;
+		long lower = (long)(SUB_BUCKETS + sub) << (exp - SUB_BITS);
+		return lower + (1L << (exp - SUB_BITS)) - 1;
+	}
+}
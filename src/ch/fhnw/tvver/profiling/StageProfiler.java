@@ -0,0 +1,139 @@
+package ch.fhnw.tvver.profiling;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ch.fhnw.ether.media.AbstractRenderCommand;
+import ch.fhnw.ether.media.IRenderTarget;
+import ch.fhnw.ether.media.RenderCommandException;
+import ch.fhnw.ether.media.RenderProgram;
+
+/**
+ * Records the per frame execution time of the commands of a render program.
+ * Commands added through {@link #addLast(RenderProgram, AbstractRenderCommand)}
+ * are followed by a probe which attributes the time since the previous probe
+ * to that command, {@link #begin(RenderProgram)} and {@link #end(RenderProgram)}
+ * enclose the profiled commands and additionally record the whole frame.
+ * A disabled profiler adds no probes at all, so the program runs exactly as
+ * without profiling.
+ */
+public final class StageProfiler {
+	public static final String FRAME = "Frame";
+
+	private static final double NS2US = 1E-3;
+	private static final String SEP   = "\t";
+
+	public static final String COLUMNS = 
+			"Stage" + SEP +
+			"Frames" + SEP +
+			"Mean [us]" + SEP +
+			"p50 [us]" + SEP +
+			"p99 [us]" + SEP +
+			"Max [us]";
+
+	private final boolean                enabled;
+	private final List<String>           names      = new ArrayList<>();
+	private final List<LatencyHistogram> histograms = new ArrayList<>();
+	private final LatencyHistogram       frame      = new LatencyHistogram();
+	private long                         frameStart;
+	private long                         last;
+
+	public StageProfiler(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Marks the start of the profiled commands, call before the first {@link #addLast(RenderProgram, AbstractRenderCommand)}.
+	 */
+	public <T extends IRenderTarget<?>> void begin(RenderProgram<T> program) {
+		if(enabled) program.addLast(new Probe<>(-1));
+	}
+
+	/**
+	 * Adds <code>cmd</code> to the end of <code>program</code> and records its execution time if enabled.
+	 */
+	public <T extends IRenderTarget<?>> void addLast(RenderProgram<T> program, AbstractRenderCommand<T> cmd) {
+		program.addLast(cmd);
+		if(enabled) program.addLast(new Probe<>(register(cmd)));
+	}
+
+	/**
+	 * Marks the end of the profiled commands, the time since {@link #begin(RenderProgram)} is recorded as {@link #FRAME}.
+	 */
+	public <T extends IRenderTarget<?>> void end(RenderProgram<T> program) {
+		if(enabled) program.addLast(new Probe<>(Integer.MAX_VALUE));
+	}
+
+	private synchronized int register(AbstractRenderCommand<?> cmd) {
+		Class<?> cls  = cmd.getClass();
+		String   name = cls.getSimpleName();
+		if(name.isEmpty()) name = cls.getSuperclass().getSimpleName();
+		String unique = name;
+		for(int i = 2; names.contains(unique); i++)
+			unique = name + "#" + i;
+		names.add(unique);
+		histograms.add(new LatencyHistogram());
+		return names.size() - 1;
+	}
+
+	/**
+	 * Returns a copy of the histograms in pipeline order, followed by the whole
+	 * frame. May be called while the program is running.
+	 * 
+	 * @return The histograms by stage name.
+	 */
+	public synchronized Map<String, LatencyHistogram> snapshot() {
+		Map<String, LatencyHistogram> result = new LinkedHashMap<>();
+		for(int i = 0; i < names.size(); i++)
+			result.put(names.get(i), histograms.get(i).snapshot());
+		if(frame.getCount() > 0)
+			result.put(FRAME, frame.snapshot());
+		return result;
+	}
+
+	/**
+	 * Writes a tab separated table of a {@link #snapshot()} in microseconds.
+	 */
+	public void write(PrintWriter out) {
+		out.println(COLUMNS);
+		for(Map.Entry<String, LatencyHistogram> e : snapshot().entrySet()) {
+			LatencyHistogram h = e.getValue();
+			out.println(e.getKey() + SEP + 
+					h.getCount() + SEP +
+					String.format("%.1f", h.getMean() * NS2US) + SEP +
+					String.format("%.1f", h.getPercentile(50) * NS2US) + SEP +
+					String.format("%.1f", h.getPercentile(99) * NS2US) + SEP +
+					String.format("%.1f", h.getMax() * NS2US));
+		}
+		out.flush();
+	}
+
+	private final class Probe<T extends IRenderTarget<?>> extends AbstractRenderCommand<T> {
+		private final int              stage;
+		private final LatencyHistogram histogram;
+
+		Probe(int stage) {
+			this.stage     = stage;
+			this.histogram = stage >= 0 && stage < histograms.size() ? histograms.get(stage) : null;
+		}
+
+		@Override
+		protected void run(T target) throws RenderCommandException {
+			long now = System.nanoTime();
+			if(stage < 0)
+				frameStart = now;
+			else if(stage == Integer.MAX_VALUE)
+				frame.record(now - frameStart);
+			else
+				histogram.record(now - last);
+			last = now;
+		}
+	}
+}